@@ -0,0 +1,118 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Aborts the running simulations when the error percentage or a response time percentile of the requests of the
+ * sliding window of the {@link LiveStatistics} exceeds its threshold. The window leaves out the grace period of
+ * each run, so that the warm up of every simulation is ignored, not only the one of the first.
+ */
+final class AbortWatchdog implements Closeable {
+
+  private static final long CHECK_MILLIS = 1000;
+
+  private final LiveStatistics statistics;
+  private final Double maxErrorPercentage;
+  private final Long maxPercentileMillis;
+  private final double percentile;
+  private final long minRequests;
+  private final Runnable abortAction;
+  private final Log log;
+
+  private ScheduledExecutorService scheduler;
+  private volatile String reason;
+
+  /**
+   * @param statistics live statistics with a sliding window
+   * @param maxErrorPercentage maximum error percentage of the window, null for none
+   * @param maxPercentileMillis maximum value of the percentile of the response times of the window, null for none
+   * @param percentile the percentile checked against maxPercentileMillis
+   * @param minRequests minimum number of requests in the window for the thresholds to be checked
+   * @param abortAction stops the running simulations
+   */
+  AbortWatchdog(LiveStatistics statistics, Double maxErrorPercentage, Long maxPercentileMillis, double percentile,
+                long minRequests, Runnable abortAction, Log log) {
+    this.statistics = statistics;
+    this.maxErrorPercentage = maxErrorPercentage;
+    this.maxPercentileMillis = maxPercentileMillis;
+    this.percentile = percentile;
+    this.minRequests = minRequests;
+    this.abortAction = abortAction;
+    this.log = log;
+  }
+
+  void start() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "gatling-abort-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::check, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  void check() {
+    if (reason != null) {
+      // keep stopping simulations started after the abort, such as parked forks
+      abortAction.run();
+      return;
+    }
+    RequestStats window = statistics.window();
+    if (window.getCount() == 0 || window.getCount() < minRequests) {
+      return;
+    }
+
+    String breach = null;
+    if (maxErrorPercentage != null && window.getErrorPercentage() > maxErrorPercentage) {
+      breach = String.format("error percentage %.2f%% exceeds %s%%", window.getErrorPercentage(), maxErrorPercentage);
+    } else if (maxPercentileMillis != null && window.getResponseTimes().percentile(percentile) > maxPercentileMillis) {
+      breach = String.format("p%s response time %d ms exceeds %d ms", formatPercentile(), window.getResponseTimes().percentile(percentile), maxPercentileMillis);
+    }
+    if (breach != null) {
+      reason = String.format("Load test aborted: %s over the last %d seconds (%d requests)", breach, statistics.windowSeconds(), window.getCount());
+      log.error(reason);
+      abortAction.run();
+    }
+  }
+
+  private String formatPercentile() {
+    return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+  }
+
+  boolean isAborted() {
+    return reason != null;
+  }
+
+  /**
+   * @return why the simulations were aborted, null when they weren't
+   */
+  String getReason() {
+    return reason;
+  }
+
+  @Override
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+    }
+  }
+}
@@ -52,6 +52,12 @@ public abstract class AbstractGatlingMojo extends AbstractMojo {
   @Parameter(defaultValue = "${project.build.testOutputDirectory}", readonly = true)
   protected File compiledClassesFolder;
 
+  /**
+   * Folder where the plugin keeps its caches between builds.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/gatling-maven-plugin", readonly = true)
+  protected File pluginWorkFolder;
+
   /**
    * The Maven Project.
    */
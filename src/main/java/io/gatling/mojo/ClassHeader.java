@@ -0,0 +1,129 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Name, super class and access flags of a compiled class, read from the class file header
+ * without loading the class.
+ */
+final class ClassHeader {
+
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int ACC_INTERFACE = 0x0200;
+  private static final int ACC_ABSTRACT = 0x0400;
+
+  private final String className;
+  private final String superClassName;
+  private final int accessFlags;
+
+  ClassHeader(String className, String superClassName, int accessFlags) {
+    this.className = className;
+    this.superClassName = superClassName;
+    this.accessFlags = accessFlags;
+  }
+
+  String getClassName() {
+    return className;
+  }
+
+  /**
+   * @return the binary name of the super class, null for java.lang.Object and module-info
+   */
+  String getSuperClassName() {
+    return superClassName;
+  }
+
+  int getAccessFlags() {
+    return accessFlags;
+  }
+
+  boolean isConcrete() {
+    return (accessFlags & (ACC_INTERFACE | ACC_ABSTRACT)) == 0;
+  }
+
+  static ClassHeader read(File classFile) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(classFile)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a class file: " + classFile);
+      }
+      in.readUnsignedShort(); // minor version
+      in.readUnsignedShort(); // major version
+
+      int constantPoolCount = in.readUnsignedShort();
+      String[] utf8 = new String[constantPoolCount];
+      int[] classNameIndex = new int[constantPoolCount];
+      for (int i = 1; i < constantPoolCount; i++) {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+          case 1: // Utf8
+            utf8[i] = in.readUTF();
+            break;
+          case 7: // Class
+            classNameIndex[i] = in.readUnsignedShort();
+            break;
+          case 8: // String
+          case 16: // MethodType
+          case 19: // Module
+          case 20: // Package
+            skip(in, 2);
+            break;
+          case 15: // MethodHandle
+            skip(in, 3);
+            break;
+          case 3: // Integer
+          case 4: // Float
+          case 9: // Fieldref
+          case 10: // Methodref
+          case 11: // InterfaceMethodref
+          case 12: // NameAndType
+          case 17: // Dynamic
+          case 18: // InvokeDynamic
+            skip(in, 4);
+            break;
+          case 5: // Long
+          case 6: // Double
+            skip(in, 8);
+            i++; // takes two entries
+            break;
+          default:
+            throw new IOException("Unknown constant pool tag " + tag + " in " + classFile);
+        }
+      }
+
+      int accessFlags = in.readUnsignedShort();
+      int thisClass = in.readUnsignedShort();
+      int superClass = in.readUnsignedShort();
+
+      String className = toBinaryName(utf8[classNameIndex[thisClass]]);
+      String superClassName = superClass == 0 ? null : toBinaryName(utf8[classNameIndex[superClass]]);
+      return new ClassHeader(className, superClassName, accessFlags);
+    }
+  }
+
+  private static void skip(DataInputStream in, int bytes) throws IOException {
+    in.readFully(new byte[bytes]);
+  }
+
+  private static String toBinaryName(String internalName) {
+    return internalName.replace('/', '.');
+  }
+}
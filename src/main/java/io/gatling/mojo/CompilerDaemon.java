@@ -0,0 +1,306 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.security.Permission;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Long-lived compiler server, started in its own JVM by the plugin and reused by the following builds so the
+ * JVM and the Scala compiler stay warm.
+ * <p>
+ * The daemon listens on a loopback port and publishes the port, a random token and the key of the compiler
+ * classpath it was started with in a state file. A request is the token, a command and for {@value #COMPILE}
+ * the arguments of {@link MojoConstants#COMPILER_MAIN_CLASS}, and has to be sent within
+ * {@value #REQUEST_TIMEOUT_MILLIS} ms. The reply is a sequence of {@value #OUTPUT} frames with the compiler output
+ * and {@value #ALIVE} frames sent every {@value #HEARTBEAT_MILLIS} ms during the compilation, followed by an
+ * {@value #EXIT} frame with the exit code.
+ * The daemon stops after being idle for the configured time, or when its state file is removed or taken over.
+ */
+public final class CompilerDaemon {
+
+  static final String COMPILE = "compile";
+  static final String STOP = "stop";
+  static final char OUTPUT = 'O';
+  static final char EXIT = 'X';
+  static final char ALIVE = 'A';
+  static final int HEARTBEAT_MILLIS = 5000;
+
+  static final String PORT = "port";
+  static final String TOKEN = "token";
+  static final String KEY = "key";
+
+  private static final int POLL_MILLIS = 5000;
+  // a client that connects and sends nothing must not block the daemon
+  private static final int REQUEST_TIMEOUT_MILLIS = 10000;
+
+  private static volatile boolean trapExit;
+  // the output of the daemon, System.out is forwarded to the client while compiling
+  private static final PrintStream LOG = System.out;
+
+  private CompilerDaemon() {
+  }
+
+  /**
+   * @param args the state file, the idle timeout in seconds and the key of the compiler classpath
+   */
+  public static void main(String[] args) throws Exception {
+    File stateFile = new File(args[0]);
+    long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[1]));
+    String key = args[2];
+    String token = new BigInteger(130, new SecureRandom()).toString(32);
+    Method compilerMain = Thread.currentThread().getContextClassLoader()
+            .loadClass(MojoConstants.COMPILER_MAIN_CLASS).getMethod("main", String[].class);
+    if (!installExitTrap()) {
+      // the first compilation error would stop the daemon
+      System.exit(1);
+    }
+
+    try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      server.setSoTimeout(POLL_MILLIS);
+      writeState(stateFile, server.getLocalPort(), token, key);
+      log("Compiler daemon listening on port " + server.getLocalPort());
+
+      long lastUse = System.currentTimeMillis();
+      boolean running = true;
+      while (running) {
+        try (Socket socket = server.accept()) {
+          running = serve(socket, token, compilerMain);
+          lastUse = System.currentTimeMillis();
+        } catch (SocketTimeoutException e) {
+          running = System.currentTimeMillis() - lastUse < idleTimeoutMillis && ownsState(stateFile, token);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    } finally {
+      if (ownsState(stateFile, token)) {
+        Files.deleteIfExists(stateFile.toPath());
+      }
+    }
+    log("Compiler daemon stopped");
+    // the compiler may leave non daemon threads behind
+    System.exit(0);
+  }
+
+  private static boolean serve(Socket socket, String token, Method compilerMain) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    String[] args;
+    socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+    try {
+      if (!token.equals(in.readUTF())) {
+        return true;
+      }
+      String command = in.readUTF();
+      if (STOP.equals(command)) {
+        return false;
+      }
+      args = new String[in.readInt()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = in.readUTF();
+      }
+    } catch (SocketTimeoutException e) {
+      log("Compiler daemon request timed out");
+      return true;
+    }
+    socket.setSoTimeout(0);
+
+    int exitCode = compile(compilerMain, args, out);
+    out.writeByte(EXIT);
+    out.writeInt(exitCode);
+    out.flush();
+    return true;
+  }
+
+  private static int compile(Method compilerMain, String[] args, DataOutputStream out) throws IOException {
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    FrameOutputStream frames = new FrameOutputStream(out);
+    PrintStream forward = new PrintStream(frames, true, "UTF-8");
+    Thread heartbeat = new Thread(frames::heartbeat, "compiler-daemon-heartbeat");
+    heartbeat.setDaemon(true);
+    heartbeat.start();
+    System.setOut(forward);
+    System.setErr(forward);
+    trapExit = true;
+    try {
+      compilerMain.invoke(null, new Object[]{args});
+      return 0;
+    } catch (InvocationTargetException | IllegalAccessException e) {
+      for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+        if (cause instanceof ExitException) {
+          return ((ExitException) cause).status;
+        }
+      }
+      e.printStackTrace();
+      return 1;
+    } finally {
+      trapExit = false;
+      heartbeat.interrupt();
+      try {
+        heartbeat.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      forward.flush();
+      System.setOut(stdout);
+      System.setErr(stderr);
+    }
+  }
+
+  /**
+   * The compiler calls System.exit on failure, which would stop the daemon. Java 18 to 23 only allow installing a
+   * security manager with -Djava.security.manager=allow, Java 24 not at all: the plugin doesn't start a daemon
+   * then, and when it still can't be installed the daemon stops and the client falls back to a one-shot fork.
+   *
+   * @return false when System.exit can't be trapped
+   */
+  private static boolean installExitTrap() {
+    try {
+      System.setSecurityManager(new SecurityManager() {
+        @Override
+        public void checkExit(int status) {
+          if (trapExit) {
+            throw new ExitException(status);
+          }
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+      });
+      return true;
+    } catch (UnsupportedOperationException | SecurityException e) {
+      log("Can't trap System.exit of the compiler: " + e);
+      return false;
+    }
+  }
+
+  private static void log(String message) {
+    LOG.println(message);
+  }
+
+  private static void writeState(File stateFile, int port, String token, String key) throws IOException {
+    Properties state = new Properties();
+    state.setProperty(PORT, String.valueOf(port));
+    state.setProperty(TOKEN, token);
+    state.setProperty(KEY, key);
+    File tmp = new File(stateFile.getParentFile(), stateFile.getName() + "." + token);
+    try (OutputStream out = new FileOutputStream(tmp)) {
+      state.store(out, "Gatling compiler daemon");
+    }
+    Files.move(tmp.toPath(), stateFile.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+
+  static Properties readState(File stateFile) throws IOException {
+    Properties state = new Properties();
+    try (InputStream in = new FileInputStream(stateFile)) {
+      state.load(in);
+    }
+    return state;
+  }
+
+  private static boolean ownsState(File stateFile, String token) {
+    try {
+      return stateFile.isFile() && token.equals(readState(stateFile).getProperty(TOKEN));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static final class ExitException extends SecurityException {
+
+    private final int status;
+
+    private ExitException(int status) {
+      super("System.exit(" + status + ")");
+      this.status = status;
+    }
+  }
+
+  private static final class FrameOutputStream extends OutputStream {
+
+    private final DataOutputStream out;
+
+    private FrameOutputStream(DataOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      out.writeByte(OUTPUT);
+      out.writeInt(len);
+      out.write(b, off, len);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+      out.flush();
+    }
+
+    /**
+     * Tells the client the compilation is still running, until interrupted.
+     */
+    void heartbeat() {
+      try {
+        while (true) {
+          Thread.sleep(HEARTBEAT_MILLIS);
+          synchronized (this) {
+            out.writeByte(ALIVE);
+            out.flush();
+          }
+        }
+      } catch (InterruptedException | IOException e) {
+        // the compilation is over or the client is gone
+      }
+    }
+  }
+}
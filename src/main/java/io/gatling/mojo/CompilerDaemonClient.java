@@ -0,0 +1,173 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Sends compile requests to a {@link CompilerDaemon}, starting one when none is running for the compiler classpath.
+ */
+final class CompilerDaemonClient {
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+  private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+  // several heartbeats missed: the daemon is stuck or busy with another build
+  private static final int RESPONSE_TIMEOUT_MILLIS = 6 * CompilerDaemon.HEARTBEAT_MILLIS;
+
+  private final File stateFile;
+  private final String key;
+  private final Log log;
+
+  /**
+   * @param stateFile file the daemon publishes its port in
+   * @param key identifies the compiler classpath and JVM args, a daemon started with another key is replaced
+   */
+  CompilerDaemonClient(File stateFile, String key, Log log) {
+    this.stateFile = stateFile;
+    this.key = key;
+    this.log = log;
+  }
+
+  /**
+   * Compile with the running daemon, or with a new one started from the given fork.
+   *
+   * @return the exit code of the compiler
+   * @throws IOException when no daemon could be started or reached, or the daemon didn't respond in time, the
+   *                     caller should compile without daemon
+   */
+  int compile(List<String> args, Fork daemonFork) throws IOException {
+    Properties state = readState();
+    if (state != null && !key.equals(state.getProperty(CompilerDaemon.KEY))) {
+      log.info("Compiler classpath changed, replacing the compiler daemon.");
+      stop(state);
+      state = null;
+    }
+    if (state != null) {
+      try {
+        return compile(state, args);
+      } catch (SocketTimeoutException e) {
+        throw new IOException("Compiler daemon didn't respond in time", e);
+      } catch (IOException e) {
+        log.debug("Compiler daemon not reachable: " + e.getMessage());
+      }
+    }
+    return compile(start(daemonFork), args);
+  }
+
+  private Properties start(Fork daemonFork) throws IOException {
+    log.info("Starting compiler daemon.");
+    File outputFile = new File(stateFile.getParentFile(), "compiler-daemon.log");
+    Process process = daemonFork.spawn(outputFile);
+    long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline) {
+      Properties state = readState();
+      if (state != null && key.equals(state.getProperty(CompilerDaemon.KEY))) {
+        return state;
+      }
+      if (!process.isAlive()) {
+        throw new IOException("Compiler daemon exited with " + process.exitValue() + ", see " + outputFile);
+      }
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    process.destroy();
+    throw new IOException("Compiler daemon didn't start in time, see " + outputFile);
+  }
+
+  private int compile(Properties state, List<String> args) throws IOException {
+    try (Socket socket = connect(state)) {
+      socket.setSoTimeout(RESPONSE_TIMEOUT_MILLIS);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeUTF(state.getProperty(CompilerDaemon.TOKEN));
+      out.writeUTF(CompilerDaemon.COMPILE);
+      out.writeInt(args.size());
+      for (String arg : args) {
+        out.writeUTF(arg);
+      }
+      out.flush();
+
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      while (true) {
+        int frame;
+        try {
+          frame = in.readUnsignedByte();
+        } catch (EOFException e) {
+          throw new IOException("Compiler daemon stopped during the compilation");
+        }
+        if (frame == CompilerDaemon.EXIT) {
+          return in.readInt();
+        }
+        if (frame == CompilerDaemon.ALIVE) {
+          continue;
+        }
+        byte[] output = new byte[in.readInt()];
+        in.readFully(output);
+        System.out.write(output);
+        System.out.flush();
+      }
+    }
+  }
+
+  private void stop(Properties state) {
+    try (Socket socket = connect(state)) {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeUTF(state.getProperty(CompilerDaemon.TOKEN));
+      out.writeUTF(CompilerDaemon.STOP);
+      out.flush();
+    } catch (IOException e) {
+      log.debug("Compiler daemon already stopped: " + e.getMessage());
+    }
+  }
+
+  private Socket connect(Properties state) throws IOException {
+    Socket socket = new Socket();
+    try {
+      int port = Integer.parseInt(state.getProperty(CompilerDaemon.PORT));
+      socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+      return socket;
+    } catch (IOException | RuntimeException e) {
+      socket.close();
+      throw e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+  }
+
+  private Properties readState() {
+    try {
+      return stateFile.isFile() ? CompilerDaemon.readState(stateFile) : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+}
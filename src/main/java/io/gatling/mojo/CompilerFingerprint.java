@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Fingerprint of the inputs of the simulations compilation: the content of every source in the simulations folder
+ * and the size and modification time of every classpath element.
+ */
+final class CompilerFingerprint {
+
+  static final String FILE_NAME = "compiler.fingerprint";
+
+  private static final String[] SOURCE_INCLUDES = {"**/*.scala", "**/*.java"};
+
+  private final String classpathKey;
+  private final Map<String, FileFingerprint> sources;
+
+  private CompilerFingerprint(String classpathKey, Map<String, FileFingerprint> sources) {
+    this.classpathKey = classpathKey;
+    this.sources = sources;
+  }
+
+  /**
+   * @param simulationsFolder folder with the sources to compile
+   * @param classpath classpath elements the sources are compiled against
+   * @param outputFolder folder the classes are compiled into, ignored when it is part of the classpath
+   */
+  static CompilerFingerprint of(File simulationsFolder, List<String> classpath, File outputFolder) throws IOException {
+    Map<String, FileFingerprint> sources = new LinkedHashMap<>();
+    if (simulationsFolder.isDirectory()) {
+      for (String source : scan(simulationsFolder, SOURCE_INCLUDES)) {
+        sources.put(source, FileFingerprint.of(new File(simulationsFolder, source)));
+      }
+    }
+
+    String output = outputFolder.getCanonicalPath();
+    List<String> classpathState = new ArrayList<>();
+    for (String element : classpath) {
+      File file = new File(element);
+      if (file.getCanonicalPath().equals(output)) {
+        continue;
+      }
+      classpathState.add(element);
+      if (file.isDirectory()) {
+        for (String child : scan(file, new String[]{"**/*"})) {
+          File childFile = new File(file, child);
+          classpathState.add(child + " " + childFile.length() + " " + childFile.lastModified());
+        }
+      } else {
+        classpathState.add(file.length() + " " + file.lastModified());
+      }
+    }
+    return new CompilerFingerprint(MojoUtils.sha1Hex(classpathState), sources);
+  }
+
+  /**
+   * @return the sources that were added, changed or removed since the previous fingerprint,
+   * or all sources when the classpath changed
+   */
+  List<String> changedSources(CompilerFingerprint previous) {
+    if (previous == null || !previous.classpathKey.equals(classpathKey)) {
+      return new ArrayList<>(sources.keySet());
+    }
+    List<String> changed = new ArrayList<>();
+    for (Map.Entry<String, FileFingerprint> source : sources.entrySet()) {
+      FileFingerprint old = previous.sources.get(source.getKey());
+      if (old == null || !old.getHash().equals(source.getValue().getHash())) {
+        changed.add(source.getKey());
+      }
+    }
+    for (String old : previous.sources.keySet()) {
+      if (!sources.containsKey(old)) {
+        changed.add(old);
+      }
+    }
+    return changed;
+  }
+
+  static CompilerFingerprint load(File file) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String classpathKey = reader.readLine();
+      Map<String, FileFingerprint> sources = new LinkedHashMap<>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", -1);
+        sources.put(fields[0], FileFingerprint.parse(fields[1], fields[2], fields[3]));
+      }
+      return new CompilerFingerprint(classpathKey, sources);
+    } catch (RuntimeException e) {
+      throw new IOException("Corrupt compiler fingerprint " + file, e);
+    }
+  }
+
+  void save(File file) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+      writer.write(classpathKey);
+      writer.newLine();
+      for (Map.Entry<String, FileFingerprint> source : sources.entrySet()) {
+        writer.write(source.getKey() + "\t" + source.getValue());
+        writer.newLine();
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), REPLACE_EXISTING);
+  }
+
+  private static String[] scan(File folder, String[] includes) {
+    DirectoryScanner scanner = new DirectoryScanner();
+    scanner.setBasedir(folder);
+    scanner.setIncludes(includes);
+    scanner.scan();
+    String[] files = scanner.getIncludedFiles();
+    // sorted so the classpath key doesn't depend on the listing order of the file system
+    Arrays.sort(files);
+    return files;
+  }
+}
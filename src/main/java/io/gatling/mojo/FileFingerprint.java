@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Size, modification time and content hash of a file, to tell whether it changed since a previous build.
+ */
+final class FileFingerprint {
+
+  private final long size;
+  private final long lastModified;
+  private final String hash;
+
+  FileFingerprint(long size, long lastModified, String hash) {
+    this.size = size;
+    this.lastModified = lastModified;
+    this.hash = hash;
+  }
+
+  static FileFingerprint of(File file) throws IOException {
+    return new FileFingerprint(file.length(), file.lastModified(), MojoUtils.sha1Hex(file));
+  }
+
+  long getSize() {
+    return size;
+  }
+
+  long getLastModified() {
+    return lastModified;
+  }
+
+  String getHash() {
+    return hash;
+  }
+
+  /**
+   * Cheap check that doesn't read the file.
+   */
+  boolean hasSameSizeAndTime(File file) {
+    return file.length() == size && file.lastModified() == lastModified;
+  }
+
+  /**
+   * Falls back to comparing the content when the size or the modification time changed,
+   * for instance when an unchanged source is compiled again.
+   */
+  boolean matches(File file) throws IOException {
+    return hasSameSizeAndTime(file) || (file.length() == size && MojoUtils.sha1Hex(file).equals(hash));
+  }
+
+  @Override
+  public String toString() {
+    return size + "\t" + lastModified + "\t" + hash;
+  }
+
+  static FileFingerprint parse(String size, String lastModified, String hash) {
+    return new FileFingerprint(Long.parseLong(size), Long.parseLong(lastModified), hash);
+  }
+}
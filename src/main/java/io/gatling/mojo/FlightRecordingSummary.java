@@ -0,0 +1,254 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Summary of a Java Flight Recorder recording of the Gatling JVM: GC pauses, top allocation sites, hottest methods
+ * and socket I/O. The recording is read with the jdk.jfr.consumer API of the JVM running Maven, looked up by
+ * reflection as the plugin targets Java 8.
+ */
+final class FlightRecordingSummary {
+
+  static final String RECORDING_FILE = "gatling.jfr";
+
+  private static final int TOP = 10;
+
+  private final Map<String, Long> sampledAllocations = new HashMap<>();
+  private final Map<String, Long> tlabAllocations = new HashMap<>();
+  private final Map<String, Long> executionSamples = new HashMap<>();
+  private long events;
+  private long executionSampleCount;
+  private long gcCount;
+  private Duration gcPauses = Duration.ZERO;
+  private Duration longestGcPause = Duration.ZERO;
+  private long socketReads;
+  private long bytesRead;
+  private Duration socketReadTime = Duration.ZERO;
+  private long socketWrites;
+  private long bytesWritten;
+  private Duration socketWriteTime = Duration.ZERO;
+
+  private FlightRecordingSummary() {
+  }
+
+  /**
+   * @return the summary of the recording, null when the JVM running Maven can't read recordings
+   */
+  static FlightRecordingSummary read(File recording) throws IOException {
+    EventReader reader;
+    try {
+      reader = new EventReader();
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+
+    FlightRecordingSummary summary = new FlightRecordingSummary();
+    try {
+      Object recordingFile = reader.openRecording(recording.toPath());
+      try {
+        Object event;
+        while ((event = reader.nextEvent(recordingFile)) != null) {
+          summary.add(reader, event);
+        }
+      } finally {
+        ((Closeable) recordingFile).close();
+      }
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException("Failed to read " + recording, cause);
+    } catch (ReflectiveOperationException e) {
+      throw new IOException("Failed to read " + recording, e);
+    }
+    return summary;
+  }
+
+  private void add(EventReader reader, Object event) throws ReflectiveOperationException {
+    events++;
+    switch (reader.name(event)) {
+      case "jdk.GarbageCollection":
+        gcCount++;
+        Duration pauses = reader.duration(event, "sumOfPauses");
+        gcPauses = gcPauses.plus(pauses);
+        Duration longest = reader.duration(event, "longestPause");
+        if (longest.compareTo(longestGcPause) > 0) {
+          longestGcPause = longest;
+        }
+        break;
+      case "jdk.ObjectAllocationSample":
+        addTo(sampledAllocations, reader.topFrame(event), reader.longValue(event, "weight"));
+        break;
+      case "jdk.ObjectAllocationInNewTLAB":
+        addTo(tlabAllocations, reader.topFrame(event), reader.longValue(event, "tlabSize"));
+        break;
+      case "jdk.ObjectAllocationOutsideTLAB":
+        addTo(tlabAllocations, reader.topFrame(event), reader.longValue(event, "allocationSize"));
+        break;
+      case "jdk.ExecutionSample":
+        executionSampleCount++;
+        addTo(executionSamples, reader.topFrame(event), 1);
+        break;
+      case "jdk.SocketRead":
+        socketReads++;
+        bytesRead += reader.longValue(event, "bytesRead");
+        socketReadTime = socketReadTime.plus(reader.duration(event));
+        break;
+      case "jdk.SocketWrite":
+        socketWrites++;
+        bytesWritten += reader.longValue(event, "bytesWritten");
+        socketWriteTime = socketWriteTime.plus(reader.duration(event));
+        break;
+      default:
+    }
+  }
+
+  private static void addTo(Map<String, Long> counts, String key, long value) {
+    if (key != null && value > 0) {
+      counts.merge(key, value, Long::sum);
+    }
+  }
+
+  /**
+   * @return the summary as lines of text
+   */
+  List<String> lines() {
+    List<String> lines = new ArrayList<>();
+    lines.add(events + " events");
+    lines.add(String.format(Locale.ROOT, "GC: %d collections, %d ms of pauses, longest pause %d ms",
+            gcCount, gcPauses.toMillis(), longestGcPause.toMillis()));
+
+    // Java 16+ throttled allocation samples are weighted estimates, prefer them over the TLAB events when both are enabled
+    lines.add("Top allocation sites:");
+    for (Map.Entry<String, Long> site : top(sampledAllocations.isEmpty() ? tlabAllocations : sampledAllocations)) {
+      lines.add(String.format(Locale.ROOT, "  %10.1f MB  %s", site.getValue() / (1024.0 * 1024.0), site.getKey()));
+    }
+
+    lines.add("Hottest methods:");
+    for (Map.Entry<String, Long> method : top(executionSamples)) {
+      lines.add(String.format(Locale.ROOT, "  %9.1f%%  %s", 100.0 * method.getValue() / executionSampleCount, method.getKey()));
+    }
+
+    // socket events are only recorded above the threshold of the settings
+    lines.add(String.format(Locale.ROOT, "Socket I/O above threshold: %d reads (%.1f MB, %d ms), %d writes (%.1f MB, %d ms)",
+            socketReads, bytesRead / (1024.0 * 1024.0), socketReadTime.toMillis(),
+            socketWrites, bytesWritten / (1024.0 * 1024.0), socketWriteTime.toMillis()));
+    return lines;
+  }
+
+  private static List<Map.Entry<String, Long>> top(Map<String, Long> counts) {
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+    return entries.subList(0, Math.min(TOP, entries.size()));
+  }
+
+  /**
+   * Reflective access to the jdk.jfr.consumer API.
+   */
+  private static final class EventReader {
+
+    private final Class<?> recordingFileClass;
+    private final Method hasMoreEvents;
+    private final Method readEvent;
+    private final Method getEventType;
+    private final Method eventTypeName;
+    private final Method getDuration;
+    private final Method getStackTrace;
+    private final Method getFrames;
+    private final Method getMethod;
+    private final Method methodType;
+    private final Method methodName;
+    private final Method className;
+    private final Method hasField;
+    private final Method getLong;
+    private final Method getFieldDuration;
+
+    private EventReader() throws ReflectiveOperationException {
+      recordingFileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+      Class<?> recordedObject = Class.forName("jdk.jfr.consumer.RecordedObject");
+      Class<?> recordedEvent = Class.forName("jdk.jfr.consumer.RecordedEvent");
+      hasMoreEvents = recordingFileClass.getMethod("hasMoreEvents");
+      readEvent = recordingFileClass.getMethod("readEvent");
+      getEventType = recordedEvent.getMethod("getEventType");
+      eventTypeName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+      getDuration = recordedEvent.getMethod("getDuration");
+      getStackTrace = recordedEvent.getMethod("getStackTrace");
+      getFrames = Class.forName("jdk.jfr.consumer.RecordedStackTrace").getMethod("getFrames");
+      getMethod = Class.forName("jdk.jfr.consumer.RecordedFrame").getMethod("getMethod");
+      Class<?> recordedMethod = Class.forName("jdk.jfr.consumer.RecordedMethod");
+      methodType = recordedMethod.getMethod("getType");
+      methodName = recordedMethod.getMethod("getName");
+      className = Class.forName("jdk.jfr.consumer.RecordedClass").getMethod("getName");
+      hasField = recordedObject.getMethod("hasField", String.class);
+      getLong = recordedObject.getMethod("getLong", String.class);
+      getFieldDuration = recordedObject.getMethod("getDuration", String.class);
+    }
+
+    Object openRecording(Path path) throws ReflectiveOperationException {
+      return recordingFileClass.getConstructor(Path.class).newInstance(path);
+    }
+
+    /**
+     * @return the next event, null at the end of the recording
+     */
+    Object nextEvent(Object recordingFile) throws ReflectiveOperationException {
+      return (Boolean) hasMoreEvents.invoke(recordingFile) ? readEvent.invoke(recordingFile) : null;
+    }
+
+    String name(Object event) throws ReflectiveOperationException {
+      return (String) eventTypeName.invoke(getEventType.invoke(event));
+    }
+
+    Duration duration(Object event) throws ReflectiveOperationException {
+      return (Duration) getDuration.invoke(event);
+    }
+
+    Duration duration(Object event, String field) throws ReflectiveOperationException {
+      return (Boolean) hasField.invoke(event, field) ? (Duration) getFieldDuration.invoke(event, field) : Duration.ZERO;
+    }
+
+    long longValue(Object event, String field) throws ReflectiveOperationException {
+      return (Boolean) hasField.invoke(event, field) ? (Long) getLong.invoke(event, field) : 0;
+    }
+
+    /**
+     * @return the class and method of the top frame of the stack trace of the event, null when there is none
+     */
+    String topFrame(Object event) throws ReflectiveOperationException {
+      Object stackTrace = getStackTrace.invoke(event);
+      if (stackTrace == null) {
+        return null;
+      }
+      List<?> frames = (List<?>) getFrames.invoke(stackTrace);
+      if (frames.isEmpty()) {
+        return null;
+      }
+      Object method = getMethod.invoke(frames.get(0));
+      return className.invoke(methodType.invoke(method)) + "." + methodName.invoke(method);
+    }
+  }
+}
@@ -16,14 +16,28 @@
 package io.gatling.mojo;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecuteResultHandler;
 import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.ExecuteWatchdog;
 import org.apache.commons.exec.Executor;
 import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.commons.exec.ShutdownHookProcessDestroyer;
@@ -32,34 +46,49 @@ import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.toolchain.Toolchain;
 import org.codehaus.plexus.util.StringUtils;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
 class Fork {
 
   private static final String ARG_FILE_PREFIX = "gatling-maven-plugin-";
   private static final String ARG_FILE_SUFFIX = ".args";
+  private static final String PACKED_DIRECTORY_PREFIX = "directory-";
+  private static final int PACKED_DIRECTORY_MAX_AGE_DAYS = 7;
 
   private final String javaExecutable;
+  private final String unquotedJavaExecutable;
   private final String mainClassName;
-  private final List<String> classpath;
+  private List<String> classpath;
   private final boolean propagateSystemProperties;
+  private final File workFolder;
   private final Log log;
 
   private final List<String> jvmArgs = new ArrayList<>();
   private final List<String> args = new ArrayList<>();
 
+  private File argFile;
+  private File classDataSharingFolder;
+  private File flightRecording;
+  private String flightRecordingSettings;
+
   Fork(String mainClassName,//
               List<String> classpath,//
               List<String> jvmArgs,//
               List<String> args,//
               Toolchain toolchain,//
               boolean propagateSystemProperties,//
+              File workFolder,//
               Log log) throws Exception {
 
     this.mainClassName = mainClassName;
     this.classpath = classpath;
     this.jvmArgs.addAll(jvmArgs);
     this.args.addAll(args);
-    this.javaExecutable = safe(safeWindowsPath(findJavaExecutable(toolchain)));
+    this.unquotedJavaExecutable = findJavaExecutable(toolchain);
+    this.javaExecutable = safe(safeWindowsPath(unquotedJavaExecutable));
     this.propagateSystemProperties = propagateSystemProperties;
+    this.workFolder = workFolder;
     this.log = log;
   }
 
@@ -75,7 +104,292 @@ class Fork {
     return value.contains(" ") ? '"' + value + '"' : value;
   }
 
+  /**
+   * Use an application class data sharing archive for the classpath of this fork, stored in the given folder and
+   * created after the first run. The directories of the classpath are replaced with jars of their content at
+   * their position, so the same classes and resources load, from a jar. Needs Java 11 or later, ignored on older
+   * versions.
+   */
+  void setClassDataSharingFolder(File classDataSharingFolder) {
+    this.classDataSharingFolder = classDataSharingFolder;
+  }
+
+  /**
+   * Record the fork with Java Flight Recorder, dumped into the given file when the fork exits.
+   * Needs Java 11 or later, ignored on older versions.
+   *
+   * @param settings name or path of the JFR settings, such as default or profile
+   */
+  void setFlightRecording(File recording, String settings) {
+    this.flightRecording = recording;
+    this.flightRecordingSettings = settings;
+  }
+
   void run() throws Exception {
+    int exitValue = start().waitFor();
+    if (exitValue != 0) {
+      throw new MojoFailureException("command line returned non-zero value:" + exitValue);
+    }
+  }
+
+  /**
+   * Starts the fork without waiting for it to end. The fork is destroyed when Maven exits.
+   *
+   * @return the running fork
+   */
+  Running start() throws IOException {
+    File archive = null;
+    File classList = null;
+    if (classDataSharingFolder != null) {
+      if (MojoUtils.javaMajorVersion(unquotedJavaExecutable) >= 11) {
+        // archives can only contain classes from jars and can't be used with non empty directories on the
+        // classpath, the directories are replaced with jars of their content at the same position
+        classpath = withPackedDirectories(classpath);
+        archive = classDataSharingArchive();
+        if (archive.isFile()) {
+          jvmArgs.add("-XX:SharedArchiveFile=" + archive.getCanonicalPath());
+          jvmArgs.add("-Xshare:auto");
+        } else {
+          Files.createDirectories(classDataSharingFolder.toPath());
+          classList = new File(classDataSharingFolder, archive.getName() + "." + UUID.randomUUID() + ".classlist");
+          jvmArgs.add("-XX:DumpLoadedClassList=" + classList.getCanonicalPath());
+        }
+      } else {
+        log.debug("Class data sharing archives need Java 11 or later");
+      }
+    }
+
+    if (flightRecording != null) {
+      if (MojoUtils.javaMajorVersion(unquotedJavaExecutable) >= 11) {
+        Files.createDirectories(flightRecording.getAbsoluteFile().getParentFile().toPath());
+        jvmArgs.add("-XX:StartFlightRecording=settings=" + flightRecordingSettings
+                + ",filename=" + flightRecording.getCanonicalPath() + ",dumponexit=true");
+      } else {
+        log.warn("Flight recordings need Java 11 or later");
+      }
+    }
+
+    CommandLine cl = buildCommandLine();
+
+    Executor exec = new DefaultExecutor();
+    exec.setStreamHandler(new PumpStreamHandler(System.out, System.err, System.in));
+    exec.setProcessDestroyer(new ShutdownHookProcessDestroyer());
+    ExecuteWatchdog watchdog = new ExecuteWatchdog(ExecuteWatchdog.INFINITE_TIMEOUT);
+    exec.setWatchdog(watchdog);
+
+    DefaultExecuteResultHandler resultHandler = new DefaultExecuteResultHandler();
+    exec.execute(cl, resultHandler);
+    return new Running(resultHandler, watchdog, archive, classList);
+  }
+
+  /**
+   * A fork that was started.
+   */
+  final class Running {
+
+    private final DefaultExecuteResultHandler resultHandler;
+    private final ExecuteWatchdog watchdog;
+    private final File archive;
+    private final File classList;
+    private boolean cleanedUp;
+
+    private Running(DefaultExecuteResultHandler resultHandler, ExecuteWatchdog watchdog, File archive, File classList) {
+      this.resultHandler = resultHandler;
+      this.watchdog = watchdog;
+      this.archive = archive;
+      this.classList = classList;
+    }
+
+    boolean isDone() {
+      return resultHandler.hasResult();
+    }
+
+    /**
+     * Waits for the fork to end.
+     *
+     * @return the exit value
+     * @throws ExecuteException when the exit value isn't 0, as for a synchronous execution
+     */
+    int waitFor() throws IOException, InterruptedException {
+      resultHandler.waitFor();
+      cleanUp();
+      ExecuteException failure = resultHandler.getException();
+      if (failure != null) {
+        throw failure;
+      }
+      return resultHandler.getExitValue();
+    }
+
+    /**
+     * Terminates the fork, the JVM runs its shutdown hooks.
+     */
+    void destroy() {
+      watchdog.destroyProcess();
+    }
+
+    private synchronized void cleanUp() {
+      if (!cleanedUp) {
+        cleanedUp = true;
+        deleteArgFile();
+        if (classList != null) {
+          dumpArchive(classList, archive);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the classpath with every directory replaced by a jar of its content, named after a fingerprint of the
+   * content so that the archive key changes with it
+   */
+  private List<String> withPackedDirectories(List<String> classpath) throws IOException {
+    List<String> packed = new ArrayList<>();
+    for (String element : classpath) {
+      File directory = new File(element);
+      packed.add(directory.isDirectory() ? packDirectory(directory).getCanonicalPath() : element);
+    }
+    return packed;
+  }
+
+  private File packDirectory(File directory) throws IOException {
+    Path root = directory.toPath();
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(root)) {
+      files = walk.filter(path -> !path.equals(root)).sorted().collect(Collectors.toList());
+    }
+    List<String> key = new ArrayList<>();
+    key.add(directory.getCanonicalPath());
+    for (Path file : files) {
+      File f = file.toFile();
+      key.add(root.relativize(file) + "\t" + f.length() + "\t" + f.lastModified());
+    }
+    File jar = new File(classDataSharingFolder, PACKED_DIRECTORY_PREFIX + MojoUtils.sha1Hex(key) + ".jar");
+    if (jar.isFile()) {
+      return jar;
+    }
+
+    Files.createDirectories(classDataSharingFolder.toPath());
+    deleteUnusedPackedDirectories();
+    File tmp = File.createTempFile(PACKED_DIRECTORY_PREFIX, ".tmp", classDataSharingFolder);
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(tmp))) {
+      for (Path file : files) {
+        String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+        boolean isDirectory = Files.isDirectory(file);
+        JarEntry entry = new JarEntry(isDirectory ? name + "/" : name);
+        entry.setTime(file.toFile().lastModified());
+        out.putNextEntry(entry);
+        if (!isDirectory) {
+          Files.copy(file, out);
+        }
+        out.closeEntry();
+      }
+    }
+    // concurrent forks may pack the same content
+    Files.move(tmp.toPath(), jar.toPath(), REPLACE_EXISTING);
+    return jar;
+  }
+
+  /**
+   * Jars of older content of the directories, but not the ones forks that are still running may use.
+   */
+  private void deleteUnusedPackedDirectories() {
+    long expired = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(PACKED_DIRECTORY_MAX_AGE_DAYS);
+    File[] jars = classDataSharingFolder.listFiles((dir, name) -> name.startsWith(PACKED_DIRECTORY_PREFIX) && name.endsWith(".jar"));
+    if (jars != null) {
+      for (File jar : jars) {
+        if (jar.lastModified() < expired) {
+          jar.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * Heap and GC settings used to create the archive have to match the ones of the runs.
+   */
+  private List<String> archiveJvmArgs() {
+    List<String> archiveJvmArgs = new ArrayList<>();
+    for (String jvmArg : jvmArgs) {
+      if (jvmArg.startsWith("-X") && !jvmArg.startsWith("-XX:DumpLoadedClassList")
+              && !jvmArg.startsWith("-XX:SharedArchiveFile") && !jvmArg.startsWith("-Xshare")
+              && !jvmArg.startsWith("-XX:StartFlightRecording") && !jvmArg.startsWith("-XX:FlightRecorderOptions")) {
+        archiveJvmArgs.add(jvmArg);
+      }
+    }
+    return archiveJvmArgs;
+  }
+
+  private File classDataSharingArchive() {
+    List<String> key = new ArrayList<>();
+    key.add(unquotedJavaExecutable);
+    key.add(mainClassName);
+    key.addAll(classpath);
+    key.addAll(archiveJvmArgs());
+    return new File(classDataSharingFolder, MojoUtils.sha1Hex(key) + ".jsa");
+  }
+
+  /**
+   * Creates the archive from the classes the first run loaded, in a separate JVM since Java 11 can only dump
+   * archives with -Xshare:dump.
+   */
+  private void dumpArchive(File classList, File archive) {
+    File newArchive = new File(classDataSharingFolder, classList.getName() + ".jsa");
+    File output = new File(classDataSharingFolder, "dump.log");
+    try {
+      if (!classList.isFile()) {
+        return;
+      }
+      log.info("Creating class data sharing archive " + archive.getName());
+      List<String> command = new ArrayList<>();
+      command.add(unquotedJavaExecutable);
+      command.addAll(archiveJvmArgs());
+      command.add("-Xshare:dump");
+      command.add("-XX:SharedClassListFile=" + classList.getCanonicalPath());
+      command.add("-XX:SharedArchiveFile=" + newArchive.getCanonicalPath());
+      command.add("-cp");
+      command.add(MojoUtils.toMultiPath(classpath));
+      int exitValue = new ProcessBuilder(command)
+              .redirectErrorStream(true)
+              .redirectOutput(output)
+              .start()
+              .waitFor();
+      if (exitValue == 0 && newArchive.isFile()) {
+        Files.move(newArchive.toPath(), archive.toPath(), ATOMIC_MOVE);
+      } else {
+        log.warn("Failed to create class data sharing archive, see " + output);
+      }
+    } catch (IOException e) {
+      log.warn("Failed to create class data sharing archive: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      classList.delete();
+      newArchive.delete();
+    }
+  }
+
+  /**
+   * Starts the fork in the background, detached from this build: it isn't destroyed when Maven exits.
+   *
+   * @param outputFile file the output of the fork is appended to
+   * @return the started process
+   */
+  Process spawn(File outputFile) throws IOException {
+    CommandLine cl = buildCommandLine();
+    // the spawned JVM reads it at startup, but may outlive this build
+    argFile.deleteOnExit();
+    List<String> command = new ArrayList<>();
+    command.add(unquotedJavaExecutable);
+    command.addAll(Arrays.asList(cl.getArguments()));
+    return new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(outputFile))
+            .start();
+  }
+
+  private CommandLine buildCommandLine() throws IOException {
+    boolean javaArgFile = MojoUtils.javaMajorVersion(unquotedJavaExecutable) >= 9;
+
     if (propagateSystemProperties) {
       for (Entry<Object, Object> systemProp : System.getProperties().entrySet()) {
         String name = systemProp.getKey().toString();
@@ -84,6 +398,10 @@ class Fork {
           if (name.contains(" ")) {
             log.warn("System property name '" + name + "' contains a whitespace and can't be propagated");
 
+          } else if (javaArgFile) {
+            // quoted in the arg file
+            this.jvmArgs.add("-D" + name + "=" + value);
+
           } else if (MojoUtils.IS_WINDOWS && value.contains(" ")) {
             log.warn("System property value '" + value + "' contains a whitespace and can't be propagated on Windows");
 
@@ -94,19 +412,11 @@ class Fork {
       }
     }
 
-    this.jvmArgs.add("-jar");
-
     if (log.isDebugEnabled()) {
       log.debug(StringUtils.join(classpath.iterator(), ",\n"));
     }
 
-    this.jvmArgs.add(MojoUtils.createBooterJar(classpath, MainWithArgsInFile.class.getName()).getCanonicalPath());
-
-    List<String> command = buildCommand();
-
-    Executor exec = new DefaultExecutor();
-    exec.setStreamHandler(new PumpStreamHandler(System.out, System.err, System.in));
-    exec.setProcessDestroyer(new ShutdownHookProcessDestroyer());
+    List<String> command = javaArgFile ? buildJavaArgFileCommand() : buildBooterCommand();
 
     CommandLine cl = new CommandLine(javaExecutable);
     for (String arg : command) {
@@ -116,18 +426,60 @@ class Fork {
     if (log.isDebugEnabled()) {
       log.debug(cl.toString());
     }
+    return cl;
+  }
 
-    int exitValue = exec.execute(cl);
-    if (exitValue != 0) {
-      throw new MojoFailureException("command line returned non-zero value:" + exitValue);
+  /**
+   * Java 9+ reads the whole command line from an @argfile, so the main class is launched directly,
+   * without booter jar nor {@link MainWithArgsInFile}.
+   */
+  private List<String> buildJavaArgFileCommand() throws IOException {
+    List<String> javaArgs = new ArrayList<>(jvmArgs.size() + args.size() + 3);
+    javaArgs.add("-cp");
+    javaArgs.add(MojoUtils.toMultiPath(classpath));
+    javaArgs.addAll(jvmArgs);
+    javaArgs.add(mainClassName);
+    javaArgs.addAll(args);
+
+    Files.createDirectories(workFolder.toPath());
+    argFile = File.createTempFile(ARG_FILE_PREFIX, ARG_FILE_SUFFIX, workFolder);
+    try (PrintWriter out = new PrintWriter(argFile)) {
+      for (String arg : javaArgs) {
+        out.println(quoteJavaArg(String.valueOf(arg)));
+      }
     }
+    return Collections.singletonList("@" + argFile.getCanonicalPath());
   }
 
-  private List<String> buildCommand() throws IOException {
-    ArrayList<String> command = new ArrayList<>(jvmArgs.size() + 2);
+  private static String quoteJavaArg(String arg) {
+    StringBuilder quoted = new StringBuilder(arg.length() + 2).append('"');
+    for (char c : arg.toCharArray()) {
+      switch (c) {
+        case '\\':
+        case '"':
+          quoted.append('\\').append(c);
+          break;
+        case '\n':
+          quoted.append("\\n");
+          break;
+        case '\r':
+          quoted.append("\\r");
+          break;
+        default:
+          quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  private List<String> buildBooterCommand() throws IOException {
+    ArrayList<String> command = new ArrayList<>(jvmArgs.size() + 4);
     command.addAll(jvmArgs);
+    command.add("-jar");
+    command.add(MojoUtils.createBooterJar(classpath, MainWithArgsInFile.class.getName(), new File(workFolder, "booter")).getCanonicalPath());
     command.add(mainClassName);
-    command.add(createArgFile(args).getCanonicalPath());
+    argFile = createArgFile(args);
+    command.add(argFile.getCanonicalPath());
     return command;
   }
 
@@ -148,7 +500,7 @@ class Fork {
       && !name.equals("org.slf4j.simpleLogger.defaultLogLevel");
   }
 
-  private String findJavaExecutable(Toolchain toolchain) {
+  static String findJavaExecutable(Toolchain toolchain) {
     String fromToolchain = toolchain != null ? toolchain.findTool("java") : null;
     if (fromToolchain != null) {
       return fromToolchain;
@@ -166,8 +518,8 @@ class Fork {
   }
 
   private File createArgFile(List<String> args) throws IOException {
-    final File argFile = File.createTempFile(ARG_FILE_PREFIX, ARG_FILE_SUFFIX);
-    argFile.deleteOnExit();
+    Files.createDirectories(workFolder.toPath());
+    final File argFile = File.createTempFile(ARG_FILE_PREFIX, ARG_FILE_SUFFIX, workFolder);
     try (PrintWriter out = new PrintWriter(argFile)) {
       for (String arg : args) {
         out.println(arg);
@@ -175,4 +527,10 @@ class Fork {
       return argFile;
     }
   }
+
+  private void deleteArgFile() {
+    if (argFile != null && !argFile.delete()) {
+      argFile.deleteOnExit();
+    }
+  }
 }
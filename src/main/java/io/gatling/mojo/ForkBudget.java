@@ -0,0 +1,90 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits the heap and the cores of the injector between forks that run at the same time.
+ */
+final class ForkBudget {
+
+  private final int forks;
+  private final int coresPerFork;
+  private final long heapMegabytesPerFork;
+
+  /**
+   * @param forks number of forks running at the same time
+   * @param cores total number of cores to share, all available processors when 0 or less
+   * @param heap total heap to share, such as 8g or 4096m, no heap limit is added when null or empty
+   */
+  ForkBudget(int forks, int cores, String heap) {
+    this.forks = Math.max(1, forks);
+    int totalCores = cores > 0 ? cores : Runtime.getRuntime().availableProcessors();
+    this.coresPerFork = Math.max(1, totalCores / this.forks);
+    this.heapMegabytesPerFork = heap == null || heap.trim().isEmpty() ? 0 : Math.max(1, parseMegabytes(heap) / this.forks);
+  }
+
+  int getCoresPerFork() {
+    return coresPerFork;
+  }
+
+  long getHeapMegabytesPerFork() {
+    return heapMegabytesPerFork;
+  }
+
+  /**
+   * JVM args to append to the args of each fork, these come last so they win over earlier -Xmx settings.
+   */
+  List<String> jvmArgs() {
+    List<String> args = new ArrayList<>();
+    if (heapMegabytesPerFork > 0) {
+      args.add("-Xmx" + heapMegabytesPerFork + "m");
+    }
+    args.add("-XX:ActiveProcessorCount=" + coresPerFork);
+    return args;
+  }
+
+  static long parseMegabytes(String size) {
+    String value = size.trim().toLowerCase(Locale.ROOT);
+    long factor;
+    switch (value.charAt(value.length() - 1)) {
+      case 't':
+        factor = 1024L * 1024L;
+        break;
+      case 'g':
+        factor = 1024L;
+        break;
+      case 'm':
+        factor = 1L;
+        break;
+      case 'k':
+        return Long.parseLong(value.substring(0, value.length() - 1)) / 1024L;
+      default:
+        // plain bytes, as accepted by -Xmx
+        return Long.parseLong(value) / (1024L * 1024L);
+    }
+    return Long.parseLong(value.substring(0, value.length() - 1)) * factor;
+  }
+
+  @Override
+  public String toString() {
+    return forks + " forks, " + coresPerFork + " cores and "
+            + (heapMegabytesPerFork > 0 ? heapMegabytesPerFork + "m heap" : "default heap") + " per fork";
+  }
+}
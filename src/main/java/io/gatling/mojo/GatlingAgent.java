@@ -0,0 +1,152 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs simulations on request of the plugin in a forked JVM, so several simulations share a warm JVM.
+ * <p>
+ * The agent connects to the loopback port it is given, sends the token and {@value #READY} once
+ * {@link MojoConstants#GATLING_MAIN_CLASS} is loaded, or the reason it can't run simulations. Each {@value #RUN}
+ * command carries the Gatling arguments of one simulation and is answered with the Gatling status code.
+ * When the agent is given flight recording settings, the command also carries the file the simulation is recorded
+ * into with Java Flight Recorder, empty for no recording. Any other command, or the plugin closing the connection,
+ * stops the agent.
+ */
+public final class GatlingAgent {
+
+  static final String READY = "ready";
+  static final String RUN = "run";
+  static final String EXIT = "exit";
+
+  private GatlingAgent() {
+  }
+
+  /**
+   * @param args the port to connect to, the token identifying this agent and optionally the name or path of the
+   *             flight recording settings
+   */
+  public static void main(String[] args) throws Exception {
+    int port = Integer.parseInt(args[0]);
+    String token = args[1];
+    String flightRecordingSettings = args.length > 2 ? args[2] : null;
+
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeUTF(token);
+
+      Method fromArgs;
+      Object noSelectedSimulation;
+      try {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        // Gatling 2.x and 3.x: fromArgs(args: Array[String], selectedSimulationClass: SelectedSimulationClass),
+        // the latter being an Option[Class[Simulation]]
+        fromArgs = classLoader.loadClass(MojoConstants.GATLING_MAIN_CLASS)
+                .getMethod("fromArgs", String[].class, classLoader.loadClass("scala.Option"));
+        noSelectedSimulation = classLoader.loadClass("scala.None$").getField("MODULE$").get(null);
+        out.writeUTF(READY);
+        out.flush();
+      } catch (ReflectiveOperationException e) {
+        out.writeUTF("Gatling can't be run in process: " + e);
+        out.flush();
+        return;
+      }
+
+      try {
+        while (RUN.equals(in.readUTF())) {
+          String[] runArgs = new String[in.readInt()];
+          for (int i = 0; i < runArgs.length; i++) {
+            runArgs[i] = in.readUTF();
+          }
+          String recording = flightRecordingSettings != null ? in.readUTF() : "";
+          Object flightRecording = recording.isEmpty() ? null : startFlightRecording(flightRecordingSettings);
+          try {
+            out.writeInt(run(fromArgs, noSelectedSimulation, runArgs));
+          } finally {
+            if (flightRecording != null) {
+              stopFlightRecording(flightRecording, Paths.get(recording));
+            }
+          }
+          out.flush();
+        }
+      } catch (EOFException e) {
+        // the plugin is gone
+      }
+    } finally {
+      // Gatling may leave non daemon threads behind
+      System.exit(0);
+    }
+  }
+
+  /**
+   * Starts a recording with jdk.jfr, through reflection since the agent is compiled for Java 8.
+   *
+   * @return the recording, null when it can't be started
+   */
+  private static Object startFlightRecording(String settings) {
+    try {
+      Class<?> configurationClass = Class.forName("jdk.jfr.Configuration");
+      Object configuration = settings.endsWith(".jfc")
+              ? configurationClass.getMethod("create", Path.class).invoke(null, Paths.get(settings))
+              : configurationClass.getMethod("getConfiguration", String.class).invoke(null, settings);
+      Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+      Object recording = recordingClass.getConstructor(configurationClass).newInstance(configuration);
+      recordingClass.getMethod("start").invoke(recording);
+      return recording;
+    } catch (ReflectiveOperationException e) {
+      System.err.println("Can't record the simulation with Java Flight Recorder: " + e);
+      return null;
+    }
+  }
+
+  private static void stopFlightRecording(Object recording, Path file) {
+    try {
+      Class<?> recordingClass = recording.getClass();
+      recordingClass.getMethod("stop").invoke(recording);
+      recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+      recordingClass.getMethod("close").invoke(recording);
+    } catch (ReflectiveOperationException e) {
+      System.err.println("Can't write the flight recording " + file + ": " + e);
+    }
+  }
+
+  private static int run(Method fromArgs, Object noSelectedSimulation, String[] args) {
+    try {
+      return ((Number) fromArgs.invoke(null, args, noSelectedSimulation)).intValue();
+    } catch (InvocationTargetException e) {
+      e.getCause().printStackTrace();
+      return 1;
+    } catch (IllegalAccessException e) {
+      e.printStackTrace();
+      return 1;
+    } finally {
+      System.out.flush();
+      System.err.flush();
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Plugin side of a {@link GatlingAgent}: waits for the forked agent to connect and sends it the simulations to run.
+ */
+final class GatlingAgentSession implements Closeable {
+
+  private static final int ACCEPT_POLL_MILLIS = 1000;
+  private static final long CONNECT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+  private static final long EXIT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private final ServerSocket server;
+  private final String token;
+  private final String flightRecordingSettings;
+  private final Log log;
+
+  private Fork.Running fork;
+  private final List<Closeable> companions = new ArrayList<>();
+  private Socket socket;
+  private DataInputStream in;
+  private DataOutputStream out;
+
+  private JvmTelemetrySampler telemetrySampler;
+
+  /**
+   * @param flightRecordingSettings name or path of the settings the agent records each simulation with, null for
+   *                                no recording
+   */
+  GatlingAgentSession(String flightRecordingSettings, Log log) throws IOException {
+    // the agent may connect before the plugin accepts, while it is busy running the previous simulation
+    this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    this.token = new BigInteger(130, new SecureRandom()).toString(32);
+    this.flightRecordingSettings = flightRecordingSettings;
+    this.log = log;
+  }
+
+  /**
+   * @return the arguments of {@link GatlingAgent#main(String[])}
+   */
+  List<String> agentArgs() {
+    List<String> args = new ArrayList<>(Arrays.asList(String.valueOf(server.getLocalPort()), token));
+    if (flightRecordingSettings != null) {
+      args.add(flightRecordingSettings);
+    }
+    return args;
+  }
+
+  /**
+   * @param telemetrySampler sampler of the agent JVM, rolled over for each simulation
+   */
+  void setTelemetrySampler(JvmTelemetrySampler telemetrySampler) {
+    this.telemetrySampler = telemetrySampler;
+  }
+
+  /**
+   * @return the sampler of the agent JVM, null when none
+   */
+  JvmTelemetrySampler getTelemetrySampler() {
+    return telemetrySampler;
+  }
+
+  /**
+   * Starts the fork running the agent, without waiting for it to connect.
+   *
+   * @param agentFork fork of {@link GatlingAgent} with the {@link #agentArgs()}
+   * @return the running fork
+   */
+  Fork.Running start(Fork agentFork) throws IOException {
+    fork = agentFork.start();
+    return fork;
+  }
+
+  /**
+   * @param companion closed after the agent exited, in registration order, even when another one fails
+   */
+  void closeWith(Closeable companion) {
+    companions.add(companion);
+  }
+
+  /**
+   * Waits for the started agent to connect. Returns immediately when it already did while the plugin was busy.
+   *
+   * @return false when the agent can't run simulations, the fork then exits on its own
+   * @throws IOException when the fork exited or didn't connect in time
+   */
+  boolean connect() throws IOException {
+    server.setSoTimeout(ACCEPT_POLL_MILLIS);
+    long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+    while (socket == null) {
+      if (fork.isDone()) {
+        throw new IOException("Gatling agent exited before connecting");
+      }
+      if (System.currentTimeMillis() > deadline) {
+        throw new IOException("Gatling agent didn't connect in time");
+      }
+      try {
+        Socket accepted = server.accept();
+        DataInputStream acceptedIn = new DataInputStream(new BufferedInputStream(accepted.getInputStream()));
+        if (token.equals(acceptedIn.readUTF())) {
+          socket = accepted;
+          in = acceptedIn;
+          out = new DataOutputStream(new BufferedOutputStream(accepted.getOutputStream()));
+        } else {
+          accepted.close();
+        }
+      } catch (SocketTimeoutException e) {
+        // poll the fork again
+      }
+    }
+
+    String status = in.readUTF();
+    if (!GatlingAgent.READY.equals(status)) {
+      log.warn(status);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Runs one simulation in the agent.
+   *
+   * @param args the Gatling arguments of the simulation
+   * @param recording file the simulation is recorded into, null for no recording or when the session has no
+   *                  flight recording settings
+   * @return the Gatling status code
+   * @throws IOException when the agent stopped during the run
+   */
+  int run(List<String> args, File recording) throws IOException {
+    out.writeUTF(GatlingAgent.RUN);
+    out.writeInt(args.size());
+    for (String arg : args) {
+      out.writeUTF(String.valueOf(arg));
+    }
+    if (flightRecordingSettings != null) {
+      if (recording != null) {
+        Files.createDirectories(recording.getAbsoluteFile().getParentFile().toPath());
+      }
+      out.writeUTF(recording != null ? recording.getAbsolutePath() : "");
+    }
+    out.flush();
+    try {
+      return in.readInt();
+    } catch (EOFException e) {
+      throw new IOException("Gatling agent stopped during the simulation");
+    }
+  }
+
+  /**
+   * Stops the agent, destroying the fork when it never connected or doesn't exit in time.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (out != null) {
+        try {
+          out.writeUTF(GatlingAgent.EXIT);
+          out.flush();
+        } catch (IOException e) {
+          log.debug("Gatling agent already stopped: " + e.getMessage());
+        }
+      } else if (fork != null) {
+        fork.destroy();
+      }
+      if (fork != null) {
+        long deadline = System.currentTimeMillis() + EXIT_TIMEOUT_MILLIS;
+        while (!fork.isDone() && System.currentTimeMillis() < deadline) {
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+        if (!fork.isDone()) {
+          log.warn("Gatling agent didn't exit, destroying it.");
+          fork.destroy();
+        }
+        try {
+          fork.waitFor();
+        } catch (IOException e) {
+          log.debug("Gatling agent exited with " + e.getMessage());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    } finally {
+      try {
+        if (socket != null) {
+          socket.close();
+        }
+        server.close();
+      } finally {
+        for (Closeable companion : companions) {
+          try {
+            companion.close();
+          } catch (IOException e) {
+            log.warn("Failed to finish the Gatling agent run: " + e.getMessage());
+          }
+        }
+      }
+    }
+  }
+}
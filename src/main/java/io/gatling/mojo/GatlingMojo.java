@@ -27,16 +27,21 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.toolchain.Toolchain;
 import org.codehaus.plexus.util.DirectoryScanner;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import com.jayway.jsonpath.*;
@@ -66,6 +71,14 @@ public class GatlingMojo extends AbstractGatlingMojo {
   @Parameter(property = "gatling.reportsOnly", alias = "ro")
   private String reportsOnly;
 
+  /**
+   * Merge the simulation.log of these run folders, names in the results folder or paths, such as the runs of
+   * several injectors, into a new run in the results folder and generate its reports, instead of running
+   * simulations.
+   */
+  @Parameter(property = "gatling.mergeRunFolders")
+  private List<String> mergeRunFolders;
+
   /**
    * Use this folder to discover simulations that could be run.
    */
@@ -144,6 +157,36 @@ public class GatlingMojo extends AbstractGatlingMojo {
   @Parameter(property = "gatling.disableCompiler", defaultValue = "false")
   private boolean disableCompiler;
 
+  /**
+   * Skip the compilation of the simulations when neither the sources in the simulations folder nor the
+   * test classpath changed since the last successful compilation. By default true.
+   */
+  @Parameter(property = "gatling.compilerUpToDateCheck", defaultValue = "true")
+  private boolean compilerUpToDateCheck;
+
+  /**
+   * Compile with a long-lived compiler daemon that stays warm between builds, instead of a new JVM for
+   * every build. Falls back to a one-shot compiler JVM when the daemon can't be used, such as on Java 24 and
+   * later, which don't allow trapping System.exit of the compiler. By default false.
+   */
+  @Parameter(property = "gatling.compilerDaemon", defaultValue = "false")
+  private boolean compilerDaemon;
+
+  /**
+   * Time in seconds after which an unused compiler daemon stops. By default 30 minutes.
+   */
+  @Parameter(property = "gatling.compilerDaemonIdleTimeout", defaultValue = "1800")
+  private int compilerDaemonIdleTimeout;
+
+  /**
+   * Start the forked Gatling and compiler JVMs with an application class data sharing archive of their classpath,
+   * created after the first run, to shorten JVM startup. Needs Java 11 or later. The classpath order is kept, but
+   * its directories, such as the test classes, are replaced with jars of their content, so resources are read
+   * from a jar rather than from the file system. By default false.
+   */
+  @Parameter(property = "gatling.classDataSharing", defaultValue = "false")
+  private boolean classDataSharing;
+
   /**
    * List of list of include patterns to use for scanning. Includes all simulations by default.
    */
@@ -163,6 +206,98 @@ public class GatlingMojo extends AbstractGatlingMojo {
   @Parameter(defaultValue = "false")
   private boolean runMultipleSimulations;
 
+  /**
+   * Number of simulations to run at the same time, each in its own forked JVM, when {@literal runMultipleSimulations}
+   * is enabled. By default 1, simulations run one after another.
+   */
+  @Parameter(property = "gatling.parallelSimulations", defaultValue = "1")
+  private int parallelSimulations;
+
+  /**
+   * Total heap shared by the simulations running in parallel, such as 8g. Each fork gets an equal part as -Xmx.
+   * By default the forks keep the heap of the Gatling JVM args.
+   */
+  @Parameter(property = "gatling.parallelHeapBudget")
+  private String parallelHeapBudget;
+
+  /**
+   * Total number of cores shared by the simulations running in parallel. Each fork gets an equal part as
+   * -XX:ActiveProcessorCount, which needs Java 8u191 or later. By default all available processors.
+   */
+  @Parameter(property = "gatling.parallelCoresBudget", defaultValue = "0")
+  private int parallelCoresBudget;
+
+  /**
+   * Size the heap, garbage collector, heap pre-touch and GC threads of the Gatling JVMs from the memory and cores
+   * of the host, or of the container Maven runs in, shared by the Gatling JVMs running at the same time. Replaces
+   * the heap and G1 settings of the default Gatling JVM args, JVM args given in {@literal jvmArgs} win.
+   * By default false.
+   */
+  @Parameter(property = "gatling.autoTuneJvm", defaultValue = "false")
+  private boolean autoTuneJvm;
+
+  /**
+   * Number of Gatling JVMs running each simulation at the same time, to generate more load than a single JVM can.
+   * Each shard gets the system properties gatling.shard.index and gatling.shard.count, which the simulation uses to
+   * inject its part of the load, such as {@literal users / Integer.getInteger("gatling.shard.count", 1)}. The
+   * results of the shards are merged into one run that Gatling reports. Every shard runs the whole simulation:
+   * K shards of a simulation that doesn't read gatling.shard.count inject K times its load. 0 for one shard per
+   * 4 available cores, only for simulations that split their load. By default 1, no sharding. Sharding replaces
+   * {@literal parallelSimulations}, {@literal reuseForkedJvm} and {@literal pipelineForks}: the simulations run
+   * one after another, each in its own shards.
+   */
+  @Parameter(property = "gatling.shards", defaultValue = "1")
+  private int shards;
+
+  /**
+   * Soak test mode, for long runs: instead of writing a simulation.log that grows without bound, Gatling sends
+   * its metrics per second to the plugin with its graphite writer. The plugin stores them in gzip segments, of
+   * which only the latest are kept, and aggregates them per minute into soak-minutes.csv and into
+   * soak-summary.txt, in a soak folder of the results folder. Gatling reports, live statistics, abort thresholds,
+   * local assertions and the history need a simulation.log and aren't available, nor is sharding.
+   * By default false.
+   */
+  @Parameter(property = "gatling.soak", defaultValue = "false")
+  private boolean soak;
+
+  /**
+   * Soak test mode: minutes of metrics in a segment. By default 60.
+   */
+  @Parameter(property = "gatling.soakSegmentMinutes", defaultValue = "60")
+  private int soakSegmentMinutes;
+
+  /**
+   * Soak test mode: number of latest segments kept, 0 to keep no raw metrics. By default 24.
+   */
+  @Parameter(property = "gatling.soakRetainedSegments", defaultValue = "24")
+  private int soakRetainedSegments;
+
+  /**
+   * Run all the simulations one after another in the same forked JVM, when {@literal runMultipleSimulations} is
+   * enabled, instead of starting a new JVM for every simulation. Simulations then share the JVM static state and
+   * warmed up code. Falls back to one JVM per simulation when the Gatling version can't run simulations this way.
+   * Ignored when simulations run in parallel. By default false.
+   */
+  @Parameter(property = "gatling.reuseForkedJvm", defaultValue = "false")
+  private boolean reuseForkedJvm;
+
+  /**
+   * Start the JVM of the next simulation while the current one runs, when {@literal runMultipleSimulations} is
+   * enabled, so it is ready to start the simulation as soon as the current one ends. Every simulation still gets
+   * its own JVM, the next one stays idle once Gatling is loaded. Ignored when {@literal reuseForkedJvm} is enabled
+   * or simulations run in parallel. By default false.
+   */
+  @Parameter(property = "gatling.pipelineForks", defaultValue = "false")
+  private boolean pipelineForks;
+
+  /**
+   * Follow the simulation.log of the running simulations and keep live request counts, error rates and response
+   * time percentiles, logged when the simulations end. When Perfana is enabled, the keep alive calls carry the
+   * throughput, error percentage and percentiles per request since the previous call. By default false.
+   */
+  @Parameter(property = "gatling.liveStatistics", defaultValue = "false")
+  private boolean liveStatistics;
+
   /**
    * Override Gatling's default JVM args, instead of replacing them.
    */
@@ -175,6 +310,11 @@ public class GatlingMojo extends AbstractGatlingMojo {
   @Parameter(defaultValue = "false")
   private boolean overrideZincJvmArgs;
 
+  private final Set<Fork.Running> runningForks = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private SimulationLogTailer tailer;
+  private final InjectorTelemetry injectorTelemetrySamples = new InjectorTelemetry();
+  private final List<String> injectorSaturations = Collections.synchronizedList(new ArrayList<>());
+
   @Parameter(defaultValue = "${plugin.artifacts}", readonly = true)
   private List<Artifact> artifacts;
 
@@ -250,12 +390,152 @@ public class GatlingMojo extends AbstractGatlingMojo {
   @Parameter(property = "gatling.assertResultsEnabled", alias = "ar", defaultValue = "false")
   private boolean assertResultsEnabled;
 
+  /**
+   * Perfana: Maximum time in seconds to wait for the Perfana test asserts to be available.
+   */
+  @Parameter(property = "gatling.perfanaAssertTimeoutSeconds", defaultValue = "120")
+  private int perfanaAssertTimeoutSeconds;
+
+  /**
+   * Sample GC, heap, CPU and thread counts of the forked Gatling JVMs over a loopback JMX connection, store them
+   * as injector-telemetry.csv in the run folder, and flag runs where the Gatling JVM itself was saturated.
+   * By default false.
+   */
+  @Parameter(property = "gatling.injectorTelemetry", defaultValue = "false")
+  private boolean injectorTelemetry;
+
+  /**
+   * Interval in seconds between two telemetry samples of the Gatling JVM. By default 5.
+   */
+  @Parameter(property = "gatling.injectorTelemetryIntervalSeconds", defaultValue = "5")
+  private int injectorTelemetryIntervalSeconds;
+
+  /**
+   * Perfana: Send the latest telemetry sample of the Gatling JVM with the keep alive calls, when
+   * {@literal injectorTelemetry} is enabled. By default false.
+   */
+  @Parameter(property = "gatling.injectorTelemetryToPerfana", defaultValue = "false")
+  private boolean injectorTelemetryToPerfana;
+
+  /**
+   * Record the forked Gatling JVMs with Java Flight Recorder, store the recording as gatling.jfr in the run folder
+   * and log a summary of GC pauses, allocation sites, hottest methods and socket I/O. Needs Java 11 or later for
+   * the Gatling JVM, and for Maven to summarize the recording. By default false.
+   */
+  @Parameter(property = "gatling.flightRecording", defaultValue = "false")
+  private boolean flightRecording;
+
+  /**
+   * Java Flight Recorder settings of the recordings, default for a low overhead or profile for more details,
+   * or the path of a custom .jfc file.
+   */
+  @Parameter(property = "gatling.flightRecordingSettings", defaultValue = "default")
+  private String flightRecordingSettings;
+
+  /**
+   * Abort the running simulations when the percentage of failed requests of the last
+   * {@literal abortWindowSeconds} exceeds this value. By default no limit.
+   */
+  @Parameter(property = "gatling.abortMaxErrorPercentage")
+  private Double abortMaxErrorPercentage;
+
+  /**
+   * Abort the running simulations when the {@literal abortPercentile} of the response times of the last
+   * {@literal abortWindowSeconds} exceeds this value in milliseconds. By default no limit.
+   */
+  @Parameter(property = "gatling.abortMaxPercentileMillis")
+  private Long abortMaxPercentileMillis;
+
+  /**
+   * Percentile of the response times checked against {@literal abortMaxPercentileMillis}. By default 95.
+   */
+  @Parameter(property = "gatling.abortPercentile", defaultValue = "95")
+  private double abortPercentile;
+
+  /**
+   * Length in seconds of the sliding window of requests the abort thresholds are checked on. By default 60.
+   */
+  @Parameter(property = "gatling.abortWindowSeconds", defaultValue = "60")
+  private int abortWindowSeconds;
+
+  /**
+   * Time in seconds after the first request of each simulation run during which its requests aren't checked
+   * against the abort thresholds, to ignore the warm up of the system under test. By default 60.
+   */
+  @Parameter(property = "gatling.abortGraceSeconds", defaultValue = "60")
+  private int abortGraceSeconds;
+
+  /**
+   * Minimum number of requests in the sliding window for the abort thresholds to be checked. By default 100.
+   */
+  @Parameter(property = "gatling.abortMinRequests", defaultValue = "100")
+  private int abortMinRequests;
+
+  /**
+   * Requirements checked by the plugin on the simulation.log of the simulations it ran, failing the build when
+   * one isn't met, such as {@literal p95(Login) < 800}, {@literal errorRate(*) <= 1} or
+   * {@literal throughput(Search) >= 50}. Metrics are pNN, mean, min, max, errorRate, throughput and count,
+   * targets a request, a group or * for all requests.
+   */
+  @Parameter(property = "gatling.localAssertions")
+  private List<String> localAssertions;
+
+  /**
+   * Store the results of every simulation run by this execution in the history folder: per request statistics and
+   * per second metrics, in a compact file that loads in milliseconds, indexed by application, test type, test
+   * environment and test run id. By default false.
+   */
+  @Parameter(property = "gatling.recordHistory", defaultValue = "false")
+  private boolean recordHistory;
+
+  /**
+   * Folder of the history of the results, shared by the builds of the project.
+   */
+  @Parameter(property = "gatling.historyFolder", defaultValue = "${project.basedir}/.gatling-history")
+  private File historyFolder;
+
+  /**
+   * Compare the results of every simulation run by this execution with the previous run of the simulation and with
+   * its baseline run in the history, without Perfana, failing the build on a regression of the p95, p99 or
+   * throughput of a request. The runs are stored in the history as with {@literal recordHistory}. By default false.
+   */
+  @Parameter(property = "gatling.regressionCheck", defaultValue = "false")
+  private boolean regressionCheck;
+
+  /**
+   * Regression check: test run id of the baseline run in the history, for the same application, test type and
+   * test environment. Only the previous run is compared when not set.
+   */
+  @Parameter(property = "gatling.regressionBaselineTestRunId")
+  private String regressionBaselineTestRunId;
+
+  /**
+   * Regression check: difference in percents with the reference run below which a metric doesn't regress.
+   * By default 10.
+   */
+  @Parameter(property = "gatling.regressionTolerancePercentage", defaultValue = "10")
+  private double regressionTolerancePercentage;
+
+  /**
+   * Regression check: Welch statistic of the per second values of the metric above which a difference with the
+   * reference run is significant rather than noise. By default 3.
+   */
+  @Parameter(property = "gatling.regressionThreshold", defaultValue = "3")
+  private double regressionThreshold;
+
   /**
    * Perfana: Enable calls to Perfana.
    */
   @Parameter(property = "gatling.perfanaEnabled", alias = "tie", defaultValue = "false")
   private boolean perfanaEnabled;
 
+  /**
+   * Perfana: Send the calls to Perfana in the background, so a slow Perfana server doesn't delay the keep alive
+   * calls nor the build. Keep alive calls not sent yet are replaced by newer ones.
+   */
+  @Parameter(property = "gatling.perfanaAsync", defaultValue = "false")
+  private boolean perfanaAsync;
+
   /**
    * Perfana: test run annotiations passed via environment variable
    */
@@ -278,10 +558,32 @@ public class GatlingMojo extends AbstractGatlingMojo {
       getLog().info("Skipping gatling-maven-plugin");
       return;
     }
+    if (mergeRunFolders != null && !mergeRunFolders.isEmpty()) {
+      reportsOnly = mergeRunFolders();
+    }
+    if (soak && reportsOnly == null) {
+      if (shardCount() > 1 || regressionCheck) {
+        throw new MojoExecutionException("Sharding and the regression check need a simulation.log, which isn't written in soak test mode.");
+      }
+      if (liveStatistics || abortMaxErrorPercentage != null || abortMaxPercentileMillis != null
+              || (localAssertions != null && !localAssertions.isEmpty()) || recordHistory) {
+        getLog().warn("Live statistics, abort thresholds, local assertions and the history need a simulation.log, which isn't written in soak test mode.");
+      }
+    }
     final ScheduledExecutorService exec;
+    final boolean abortEnabled = (abortMaxErrorPercentage != null || abortMaxPercentileMillis != null) && reportsOnly == null;
+    final LiveStatistics statistics = (liveStatistics || abortEnabled) && reportsOnly == null
+            ? new LiveStatistics(abortEnabled ? abortWindowSeconds : 0, TimeUnit.SECONDS.toMillis(abortGraceSeconds))
+            : null;
     final PerfanaClient perfanaClient = perfanaEnabled
             ? createPerfanaClient()
             : null;
+    if (perfanaClient != null && statistics != null) {
+      perfanaClient.injectLiveStatistics(statistics);
+    }
+    if (perfanaClient != null && injectorTelemetry && injectorTelemetryToPerfana) {
+      perfanaClient.injectInjectorTelemetry(injectorTelemetrySamples);
+    }
 
     if (perfanaEnabled) {
       final int periodInSeconds = 15;
@@ -296,6 +598,21 @@ public class GatlingMojo extends AbstractGatlingMojo {
 
     // Create results directories
     resultsFolder.mkdirs();
+    final Set<String> previousRuns = runFolderNames();
+    tailer = statistics != null
+            ? new SimulationLogTailer(resultsFolder, statistics, getLog())
+            : null;
+    if (tailer != null) {
+      tailer.start();
+    }
+    final AbortWatchdog abortWatchdog = abortEnabled
+            ? new AbortWatchdog(statistics, abortMaxErrorPercentage, abortMaxPercentileMillis, abortPercentile,
+                    abortMinRequests, this::destroyRunningForks, getLog())
+            : null;
+    if (abortWatchdog != null) {
+      abortWatchdog.start();
+    }
+    GatlingSimulationAbortedException aborted = null;
     try {
       Toolchain toolchain = toolchainManager.getToolchainFromBuildContext("jdk", session);
       if (!disableCompiler) {
@@ -314,12 +631,22 @@ public class GatlingMojo extends AbstractGatlingMojo {
       }
 
     } catch (Exception e) {
-      if (failOnError) {
+      if (abortWatchdog != null && abortWatchdog.isAborted()) {
+        // reported to Perfana first
+        aborted = new GatlingSimulationAbortedException(abortWatchdog.getReason(), e);
+      } else if (failOnError) {
         throw new MojoExecutionException("Gatling failed.", e);
       } else {
         getLog().warn("There were some errors while running your simulation, but failOnError was set to false won't fail your build.", e);
       }
     } finally {
+      if (abortWatchdog != null) {
+        abortWatchdog.close();
+      }
+      if (tailer != null) {
+        tailer.close();
+        logLiveStatistics(statistics);
+      }
       copyJUnitReports();
       if (exec != null) {
         getLog().info("Shut down keep alive executor.");
@@ -327,7 +654,33 @@ public class GatlingMojo extends AbstractGatlingMojo {
       }
     }
     if (perfanaEnabled) {
+      if (aborted != null) {
+        perfanaClient.addAnnotation(aborted.getMessage());
+      }
+      for (String saturation : injectorSaturations) {
+        perfanaClient.addAnnotation(saturation);
+      }
       perfanaClient.callPerfana(true);
+      perfanaClient.flush(TimeUnit.SECONDS.toMillis(30));
+    }
+    if (aborted != null) {
+      if (failOnError) {
+        throw new MojoExecutionException("Gatling failed.", aborted);
+      }
+      getLog().warn("The simulations were aborted, but failOnError was set to false won't fail your build.", aborted);
+      return;
+    }
+    List<RunHistory.Entry> recordedRuns = Collections.emptyList();
+    if ((recordHistory || regressionCheck) && reportsOnly == null) {
+      recordedRuns = recordHistory(previousRuns);
+    }
+    if (localAssertions != null && !localAssertions.isEmpty() && reportsOnly == null) {
+      assertResultsLocally(previousRuns);
+    }
+    if (regressionCheck && reportsOnly == null) {
+      checkRegressions(recordedRuns);
+    }
+    if (perfanaEnabled) {
       if (assertResultsEnabled) {
         try {
           assertResultsPerfana(perfanaClient);
@@ -341,6 +694,200 @@ public class GatlingMojo extends AbstractGatlingMojo {
     }
   }
 
+  /**
+   * Check the local assertions on the simulation.log of every simulation run by this execution.
+   * @throws MojoExecutionException when an assertion fails or the results can't be read
+   */
+  private void assertResultsLocally(Set<String> previousRuns) throws MojoExecutionException {
+    List<LocalAssertion> assertions = new ArrayList<>();
+    for (String expression : localAssertions) {
+      try {
+        assertions.add(LocalAssertion.parse(expression));
+      } catch (IllegalArgumentException e) {
+        throw new MojoExecutionException(e.getMessage(), e);
+      }
+    }
+
+    File[] runs = resultsFolder.listFiles(file -> file.isDirectory() && !previousRuns.contains(file.getName())
+            && new File(file, SimulationLogTailer.SIMULATION_LOG).isFile());
+    if (runs == null || runs.length == 0) {
+      throw new MojoExecutionException("Local assertions could not be checked, no simulation.log found in " + resultsFolder);
+    }
+
+    SimulationLogAnalyzer analyzer = new SimulationLogAnalyzer(Runtime.getRuntime().availableProcessors());
+    String assertionText = "";
+    for (File run : runs) {
+      SimulationLogAnalyzer.Result result;
+      try {
+        result = analyzer.analyze(new File(run, SimulationLogTailer.SIMULATION_LOG));
+      } catch (IOException e) {
+        throw new MojoExecutionException("Local assertions check failed. " + e.getMessage(), e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Local assertions check interrupted", e);
+      }
+      for (LocalAssertion assertion : assertions) {
+        LocalAssertion.Outcome outcome = assertion.evaluate(result);
+        getLog().info((outcome.isOk() ? "OK " : "KO ") + run.getName() + " " + outcome.getMessage());
+        if (!outcome.isOk()) {
+          assertionText += run.getName() + " " + outcome.getMessage() + "\n";
+        }
+      }
+    }
+
+    if (!assertionText.isEmpty()) {
+      throw new MojoExecutionException("One or more local assertions are failing: \n" + assertionText);
+    }
+    getLog().info("All local assertions are OK.");
+  }
+
+  /**
+   * Store the results of every simulation run by this execution in the history. A run that can't be stored is
+   * only logged, the history must not fail the build.
+   *
+   * @return the entries of the stored runs
+   */
+  private List<RunHistory.Entry> recordHistory(Set<String> previousRuns) {
+    List<RunHistory.Entry> entries = new ArrayList<>();
+    File[] runs = resultsFolder.listFiles(file -> file.isDirectory() && !previousRuns.contains(file.getName())
+            && new File(file, SimulationLogTailer.SIMULATION_LOG).isFile());
+    if (runs == null) {
+      return entries;
+    }
+    RunHistory history = new RunHistory(historyFolder);
+    for (File run : runs) {
+      try {
+        long start = System.nanoTime();
+        RunHistory.Entry entry = history.record(application, testType, testEnvironment, testRunId, run);
+        entries.add(entry);
+        getLog().info("Stored " + run.getName() + " (" + entry.getSimulation() + ") in the history " + historyFolder
+                + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+      } catch (IOException e) {
+        getLog().warn("Failed to store " + run.getName() + " in the history: " + e.getMessage());
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Compare every run stored by this execution with the previous run of its simulation and with its baseline run.
+   * @throws MojoExecutionException when a metric regressed or the history can't be read
+   */
+  private void checkRegressions(List<RunHistory.Entry> recordedRuns) throws MojoExecutionException {
+    if (recordedRuns.isEmpty()) {
+      throw new MojoExecutionException("Regressions could not be checked, no run stored in the history " + historyFolder);
+    }
+    RunHistory history = new RunHistory(historyFolder);
+    RegressionCheck check = new RegressionCheck(regressionTolerancePercentage, regressionThreshold);
+    Set<String> recordedRunNames = new HashSet<>();
+    for (RunHistory.Entry entry : recordedRuns) {
+      recordedRunNames.add(entry.getRunName());
+    }
+
+    String regressionText = "";
+    try {
+      List<RunHistory.Entry> entries = history.entries();
+      List<RunHistory.Entry> baselines = regressionBaselineTestRunId != null
+              ? history.find(application, testType, testEnvironment, regressionBaselineTestRunId)
+              : Collections.emptyList();
+      for (RunHistory.Entry current : recordedRuns) {
+        RunHistory.Entry previous = latestOf(entries, current, recordedRunNames);
+        RunHistory.Entry baseline = latestOf(baselines, current, recordedRunNames);
+        if (previous == null) {
+          getLog().info("No previous run of " + current.getSimulation() + " in the history to compare " + current.getRunName() + " with.");
+          continue;
+        }
+        if (regressionBaselineTestRunId != null && baseline == null) {
+          getLog().warn("No baseline run " + regressionBaselineTestRunId + " of " + current.getSimulation() + " in the history.");
+        }
+
+        RunHistory.Run run = history.load(current);
+        List<LocalAssertion.Outcome> outcomes = new ArrayList<>(check.compare(run, history.load(previous),
+                "previous run " + previous.getTestRunId()));
+        if (baseline != null) {
+          outcomes.addAll(check.compare(run, history.load(baseline), "baseline run " + baseline.getTestRunId()));
+        }
+        for (LocalAssertion.Outcome outcome : outcomes) {
+          getLog().info((outcome.isOk() ? "OK " : "KO ") + current.getRunName() + " " + outcome.getMessage());
+          if (!outcome.isOk()) {
+            regressionText += current.getRunName() + " " + outcome.getMessage() + "\n";
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Regression check failed. " + e.getMessage(), e);
+    }
+
+    if (!regressionText.isEmpty()) {
+      throw new MojoExecutionException("One or more regressions against the history: \n" + regressionText);
+    }
+    getLog().info("No regression against the history.");
+  }
+
+  /**
+   * @return the latest of the entries of the application, test type and environment with the simulation of the
+   * current run, other than the runs just recorded, null when there is none
+   */
+  private RunHistory.Entry latestOf(List<RunHistory.Entry> entries, RunHistory.Entry current, Set<String> recordedRunNames) {
+    RunHistory.Entry latest = null;
+    for (RunHistory.Entry entry : entries) {
+      if (entry.isOf(application, testType, testEnvironment) && entry.getSimulation().equals(current.getSimulation())
+              && !recordedRunNames.contains(entry.getRunName())) {
+        latest = entry;
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Merges the run folders to merge into a new run.
+   *
+   * @return the name of the merged run in the results folder
+   */
+  private String mergeRunFolders() throws MojoExecutionException {
+    List<File> simulationLogs = new ArrayList<>();
+    for (String runFolder : mergeRunFolders) {
+      File run = new File(runFolder);
+      if (!run.isAbsolute()) {
+        run = new File(resultsFolder, runFolder);
+      }
+      File simulationLog = new File(run, SimulationLogTailer.SIMULATION_LOG);
+      if (!simulationLog.isFile()) {
+        throw new MojoExecutionException("No simulation.log found in " + run);
+      }
+      simulationLogs.add(simulationLog);
+    }
+
+    String runName = (outputDirectoryBaseName != null ? outputDirectoryBaseName : "merged") + "-" + System.currentTimeMillis();
+    File mergedLog = new File(new File(resultsFolder, runName), SimulationLogTailer.SIMULATION_LOG);
+    long startTime = System.currentTimeMillis();
+    try {
+      long records = SimulationLogMerger.merge(simulationLogs, mergedLog);
+      getLog().info(String.format("Merged %d records of %d runs into %s in %d ms", records, simulationLogs.size(), mergedLog, System.currentTimeMillis() - startTime));
+    } catch (IOException e) {
+      throw new MojoExecutionException("Failed to merge " + mergeRunFolders + " into " + mergedLog, e);
+    }
+    return runName;
+  }
+
+  private Set<String> runFolderNames() {
+    return runFolderNames(resultsFolder);
+  }
+
+  private static Set<String> runFolderNames(File folder) {
+    String[] runs = folder.list();
+    return runs == null ? new HashSet<>() : new HashSet<>(asList(runs));
+  }
+
+  private void logLiveStatistics(LiveStatistics statistics) {
+    getLog().info("Live statistics: " + statistics.total());
+    if (getLog().isDebugEnabled()) {
+      for (Map.Entry<String, RequestStats> request : statistics.requests().entrySet()) {
+        getLog().debug(request.getKey() + ": " + request.getValue());
+      }
+    }
+  }
+
   private PerfanaClient createPerfanaClient() {
     PerfanaClient client = new PerfanaClient(application, testType, testEnvironment, testRunId, CIBuildResultsUrl, applicationRelease, rampupTimeInSeconds, constantLoadTimeInSeconds, perfanaUrl, annotations, variables);
     client.injectLogger(new PerfanaClient.Logger() {
@@ -364,6 +911,9 @@ public class GatlingMojo extends AbstractGatlingMojo {
         getLog().debug(message);
       }
     });
+    if (perfanaAsync) {
+      client.enableAsync();
+    }
     return client;
   }
 
@@ -379,7 +929,7 @@ public class GatlingMojo extends AbstractGatlingMojo {
           .addOptions(Option.SUPPRESS_EXCEPTIONS);
 
   private void assertResultsPerfana(PerfanaClient perfanaClient) throws MojoExecutionException, IOException {
-    final String assertions = perfanaClient.callCheckAsserts();
+    final String assertions = perfanaClient.callCheckAsserts(TimeUnit.SECONDS.toMillis(perfanaAssertTimeoutSeconds));
     if (assertions == null) {
       throw new MojoExecutionException("Perfana assertions could not be checked, received null");
     }
@@ -421,12 +971,150 @@ public class GatlingMojo extends AbstractGatlingMojo {
 
 
 
-  private void iterateBySimulations(Toolchain toolchain, List<String> jvmArgs, List<String> testClasspath, List<String> simulations) throws Exception {
+  private void iterateBySimulations(Toolchain toolchain, List<String> gatlingJvmArgs, List<String> testClasspath, List<String> simulations) throws Exception {
+    List<String> jvmArgs = autoTuneJvm ? autoTunedJvmArgs(toolchain, gatlingJvmArgs, simulations.size()) : gatlingJvmArgs;
+    int shardCount = shardCount();
+    if (shardCount > 1) {
+      if (shards == 0) {
+        getLog().warn(String.format("Running %d shards of each simulation, from the available cores. A simulation that doesn't read gatling.shard.count injects %d times its load.", shardCount, shardCount));
+      }
+      List<String> overridden = new ArrayList<>();
+      if (parallelSimulations > 1) {
+        overridden.add("parallelSimulations");
+      }
+      if (reuseForkedJvm) {
+        overridden.add("reuseForkedJvm");
+      }
+      if (pipelineForks) {
+        overridden.add("pipelineForks");
+      }
+      if (!overridden.isEmpty()) {
+        getLog().warn(String.join(", ", overridden) + " ignored, sharded simulations run one after another.");
+      }
+      runSequentially(simulations, args -> executeSharded(jvmArgs, args, testClasspath, toolchain, shardCount));
+      return;
+    }
+    if (parallelSimulations > 1 && simulations.size() > 1) {
+      iterateBySimulationsInParallel(toolchain, jvmArgs, testClasspath, simulations);
+      return;
+    }
+    if (reuseForkedJvm && simulations.size() > 1) {
+      iterateBySimulationsInAgent(toolchain, jvmArgs, testClasspath, simulations);
+      return;
+    }
+    if (pipelineForks && simulations.size() > 1) {
+      iterateBySimulationsPipelined(toolchain, jvmArgs, testClasspath, simulations);
+      return;
+    }
+    runSequentially(simulations, args -> executeGatling(jvmArgs, args, testClasspath, toolchain));
+  }
+
+  private List<String> autoTunedJvmArgs(Toolchain toolchain, List<String> jvmArgs, int simulations) {
+    List<String> explicitJvmArgs = new ArrayList<>(jvmArgs);
+    int forks = 1;
+    int shardCount = shardCount();
+    if (shardCount > 1) {
+      forks = shardCount;
+      explicitJvmArgs.addAll(new ForkBudget(forks, parallelCoresBudget, parallelHeapBudget).jvmArgs());
+    } else if (parallelSimulations > 1 && simulations > 1) {
+      forks = Math.min(parallelSimulations, simulations);
+      // the budget of the parallel forks is given explicitly
+      explicitJvmArgs.addAll(new ForkBudget(forks, parallelCoresBudget, parallelHeapBudget).jvmArgs());
+    } else if (pipelineForks && !reuseForkedJvm && simulations > 1) {
+      // the next JVM already runs during the current simulation
+      forks = 2;
+    }
+
+    int javaVersion = MojoUtils.javaMajorVersion(Fork.findJavaExecutable(toolchain));
+    JvmAutoTuning tuning = JvmAutoTuning.detect(forks, javaVersion, explicitJvmArgs);
+    getLog().info("Auto tuned Gatling JVM: " + tuning + ": " + String.join(" ", tuning.jvmArgs()));
+    List<String> tunedJvmArgs = new ArrayList<>(jvmArgs);
+    tunedJvmArgs.addAll(tuning.jvmArgs());
+    return tunedJvmArgs;
+  }
+
+  private void iterateBySimulationsInAgent(Toolchain toolchain, List<String> jvmArgs, List<String> testClasspath, List<String> simulations) throws Exception {
+    getLog().info(String.format("Running %d simulations in the same Gatling JVM.", simulations.size()));
+    try (GatlingAgentSession agent = startAgent(toolchain, jvmArgs, testClasspath)) {
+      if (agent.connect()) {
+        runSequentially(simulations, args -> runInAgent(agent, args));
+        return;
+      }
+    }
+    getLog().warn("reuseForkedJvm is ignored, falling back to one Gatling JVM per simulation.");
+    runSequentially(simulations, args -> executeGatling(jvmArgs, args, testClasspath, toolchain));
+  }
+
+  private void iterateBySimulationsPipelined(Toolchain toolchain, List<String> jvmArgs, List<String> testClasspath, List<String> simulations) throws Exception {
+    getLog().info(String.format("Running %d simulations, starting the JVM of each simulation during the previous one.", simulations.size()));
+    try (PipelinedRunner runner = new PipelinedRunner(toolchain, jvmArgs, testClasspath, simulations.size())) {
+      runSequentially(simulations, runner);
+    }
+  }
+
+  private GatlingAgentSession startAgent(Toolchain toolchain, List<String> jvmArgs, List<String> testClasspath) throws Exception {
+    GatlingAgentSession agent = new GatlingAgentSession(flightRecording ? flightRecordingSettings : null, getLog());
+    try {
+      List<String> forkJvmArgs = new ArrayList<>(jvmArgs);
+      JvmTelemetrySampler sampler = telemetrySampler(forkJvmArgs);
+      Fork forkedAgent = new Fork(GatlingAgent.class.getName(), testClasspath, forkJvmArgs, agent.agentArgs(), toolchain, propagateSystemProperties, pluginWorkFolder, getLog());
+      if (classDataSharing) {
+        forkedAgent.setClassDataSharingFolder(classDataSharingFolder());
+      }
+      registerRunningFork(agent.start(forkedAgent));
+      if (sampler != null) {
+        agent.setTelemetrySampler(sampler);
+        // the samples after the last simulation
+        agent.closeWith(() -> {
+          sampler.close();
+          Files.deleteIfExists(sampler.getCsvFile().toPath());
+        });
+        sampler.start();
+      }
+      return agent;
+    } catch (Exception e) {
+      agent.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Runs a simulation in an agent, with its own flight recording and telemetry moved to its run folder, also when
+   * the agent runs several simulations. The run folders are listed when the simulation is sent, since an agent may
+   * be started during the previous simulation.
+   */
+  private void runInAgent(GatlingAgentSession agent, List<String> gatlingArgs) throws Exception {
+    File runsFolder = new File(argValue(gatlingArgs, "-rf"));
+    Set<String> previousRuns = runFolderNames(runsFolder);
+    String prefix = runFolderPrefix(gatlingArgs);
+    JvmTelemetrySampler sampler = agent.getTelemetrySampler();
+    if (sampler != null) {
+      // the samples taken while the JVM started or waited for the simulation
+      Files.deleteIfExists(sampler.rollOver(telemetryCsvFile()).getCsvFile().toPath());
+    }
+    File recording = flightRecordingFile();
+    try {
+      checkGatlingStatus(agent.run(gatlingArgs, recording));
+    } finally {
+      if (recording != null) {
+        finishFlightRecording(recording, runsFolder, previousRuns, prefix);
+      }
+      if (sampler != null) {
+        try {
+          finishTelemetry(sampler.rollOver(telemetryCsvFile()), runsFolder, previousRuns, prefix);
+        } catch (IOException e) {
+          getLog().warn("Failed to write the Gatling JVM telemetry: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void runSequentially(List<String> simulations, SimulationRunner runner) throws Exception {
     Exception exc = null;
     int simulationsCount = simulations.size();
     for (int i = 0; i < simulationsCount; i++) {
       try {
-        executeGatling(jvmArgs, gatlingArgs(simulations.get(i)), testClasspath, toolchain);
+        runner.run(gatlingArgs(simulations.get(i)));
       } catch (GatlingSimulationAssertionsFailedException e) {
         if (exc == null && i == simulationsCount - 1) {
           throw e;
@@ -449,29 +1137,517 @@ public class GatlingMojo extends AbstractGatlingMojo {
     }
   }
 
+  private void iterateBySimulationsInParallel(Toolchain toolchain, List<String> jvmArgs, List<String> testClasspath, List<String> simulations) throws Exception {
+    int forks = Math.min(parallelSimulations, simulations.size());
+    ForkBudget budget = new ForkBudget(forks, parallelCoresBudget, parallelHeapBudget);
+    List<String> forkJvmArgs = new ArrayList<>(jvmArgs);
+    forkJvmArgs.addAll(budget.jvmArgs());
+    getLog().info(String.format("Running %d simulations in parallel: %s.", simulations.size(), budget));
+
+    ExecutorService pool = Executors.newFixedThreadPool(forks);
+    List<Future<?>> runs = new ArrayList<>();
+    Exception exc = null;
+    boolean stopped = false;
+    try {
+      for (String simulation : simulations) {
+        final List<String> args = gatlingArgs(simulation);
+        runs.add(pool.submit(() -> {
+          executeGatling(forkJvmArgs, args, testClasspath, toolchain);
+          return null;
+        }));
+      }
+
+      for (Future<?> run : runs) {
+        try {
+          run.get();
+        } catch (CancellationException e) {
+          // not started because an earlier simulation failed
+        } catch (ExecutionException e) {
+          Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+          if (cause instanceof GatlingSimulationAssertionsFailedException && continueOnAssertionFailure) {
+            if (exc == null) {
+              exc = cause;
+            }
+            continue;
+          }
+          exc = cause;
+          stopped = true;
+          // don't start the remaining simulations, the running ones are allowed to finish
+          for (Future<?> pending : runs) {
+            pending.cancel(false);
+          }
+          break;
+        }
+      }
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    if (exc != null) {
+      if (!stopped) {
+        getLog().warn("There were some errors while running your simulation, but continueOnAssertionFailure was set to true, so your simulations continue to perform.");
+      }
+      throw exc;
+    }
+  }
+
   private void executeCompiler(List<String> zincJvmArgs, List<String> testClasspath, Toolchain toolchain) throws Exception {
     List<String> compilerClasspath = buildCompilerClasspath();
+
+    File fingerprintFile = new File(pluginWorkFolder, CompilerFingerprint.FILE_NAME);
+    CompilerFingerprint fingerprint = null;
+    if (compilerUpToDateCheck) {
+      List<String> inputClasspath = new ArrayList<>(testClasspath);
+      inputClasspath.addAll(compilerClasspath);
+      fingerprint = CompilerFingerprint.of(simulationsFolder, inputClasspath, compiledClassesFolder);
+      List<String> changedSources = fingerprint.changedSources(loadCompilerFingerprint(fingerprintFile));
+      if (changedSources.isEmpty() && hasCompiledClasses()) {
+        getLog().info("Simulations are up to date, skipping compilation.");
+        return;
+      }
+      // Zinc only recompiles the changed sources and their dependents, based on its own analysis
+      getLog().info(String.format("Compiling simulations, %d sources changed.", changedSources.size()));
+      Files.deleteIfExists(fingerprintFile.toPath());
+    }
+
     List<String> compilerArguments = compilerArgs(testClasspath);
 
-    Fork forkedCompiler = new Fork(COMPILER_MAIN_CLASS, compilerClasspath, zincJvmArgs, compilerArguments, toolchain, false, getLog());
+    if (!compilerDaemon || !compileWithDaemon(compilerClasspath, zincJvmArgs, compilerArguments, toolchain)) {
+      Fork forkedCompiler = new Fork(COMPILER_MAIN_CLASS, compilerClasspath, zincJvmArgs, compilerArguments, toolchain, false, pluginWorkFolder, getLog());
+      if (classDataSharing) {
+        forkedCompiler.setClassDataSharingFolder(classDataSharingFolder());
+      }
+      try {
+        forkedCompiler.run();
+      } catch (ExecuteException e) {
+        throw new CompilationException(e);
+      }
+    }
+
+    if (fingerprint != null) {
+      try {
+        fingerprint.save(fingerprintFile);
+      } catch (IOException e) {
+        getLog().warn("Failed to write compiler fingerprint " + fingerprintFile + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * @return false when the daemon couldn't be used and the simulations still have to be compiled
+   */
+  private boolean compileWithDaemon(List<String> compilerClasspath, List<String> zincJvmArgs, List<String> compilerArguments, Toolchain toolchain) throws Exception {
+    // the daemon traps System.exit of the compiler with a security manager
+    int javaVersion = MojoUtils.javaMajorVersion(Fork.findJavaExecutable(toolchain));
+    if (javaVersion >= 24) {
+      getLog().warn("The compiler daemon needs a security manager, which Java " + javaVersion + " doesn't support, compiling without daemon.");
+      return false;
+    }
+    List<String> daemonJvmArgs = new ArrayList<>(zincJvmArgs);
+    if (javaVersion >= 18) {
+      daemonJvmArgs.add("-Djava.security.manager=allow");
+    }
+    List<String> keyElements = new ArrayList<>(compilerClasspath);
+    keyElements.addAll(daemonJvmArgs);
+    keyElements.add(String.valueOf(toolchain));
+    File stateFile = new File(pluginWorkFolder, "compiler-daemon.properties");
+    Files.createDirectories(pluginWorkFolder.toPath());
+
+    List<String> daemonArgs = asList(stateFile.getCanonicalPath(), String.valueOf(compilerDaemonIdleTimeout), MojoUtils.sha1Hex(keyElements));
+    Fork daemonFork = new Fork(CompilerDaemon.class.getName(), compilerClasspath, daemonJvmArgs, daemonArgs, toolchain, false, pluginWorkFolder, getLog());
+    CompilerDaemonClient client = new CompilerDaemonClient(stateFile, daemonArgs.get(2), getLog());
+    int exitValue;
     try {
-      forkedCompiler.run();
-    } catch (ExecuteException e) {
-      throw new CompilationException(e);
+      exitValue = client.compile(compilerArguments, daemonFork);
+    } catch (IOException e) {
+      getLog().warn("Compiler daemon failed, compiling without daemon: " + e.getMessage());
+      return false;
+    }
+    if (exitValue != 0) {
+      throw new CompilationException(new ExecuteException("Compiler daemon returned non-zero value: " + exitValue, exitValue));
+    }
+    return true;
+  }
+
+  private CompilerFingerprint loadCompilerFingerprint(File fingerprintFile) {
+    try {
+      return CompilerFingerprint.load(fingerprintFile);
+    } catch (IOException e) {
+      getLog().warn("Ignoring compiler fingerprint " + fingerprintFile + ": " + e.getMessage());
+      return null;
     }
   }
 
+  private boolean hasCompiledClasses() {
+    String[] compiled = compiledClassesFolder.list();
+    return compiled != null && compiled.length > 0;
+  }
+
   private void executeGatling(List<String> gatlingJvmArgs, List<String> gatlingArgs, List<String> testClasspath, Toolchain toolchain) throws Exception {
 
-    Fork forkedGatling = new Fork(GATLING_MAIN_CLASS, testClasspath, gatlingJvmArgs, gatlingArgs, toolchain, propagateSystemProperties, getLog());
+    List<String> forkJvmArgs = new ArrayList<>(gatlingJvmArgs);
+    File runsFolder = new File(argValue(gatlingArgs, "-rf"));
+    Set<String> previousRuns = runFolderNames(runsFolder);
+    boolean generatesReportsOnly = gatlingArgs.contains("-ro");
+    JvmTelemetrySampler sampler = generatesReportsOnly ? null : telemetrySampler(forkJvmArgs);
+    SoakRecorder soakRecorder = soak && !generatesReportsOnly ? soakRecorder(runsFolder, runFolderPrefix(gatlingArgs)) : null;
+    GraphiteReceiver graphiteReceiver = null;
+    List<String> forkArgs = gatlingArgs;
+    if (soakRecorder != null) {
+      graphiteReceiver = new GraphiteReceiver(soakRecorder, getLog());
+      forkJvmArgs.addAll(graphiteReceiver.jvmArgs());
+      if (!gatlingArgs.contains("-nr")) {
+        // there is no simulation.log to generate reports from
+        forkArgs = new ArrayList<>(gatlingArgs);
+        forkArgs.add("-nr");
+      }
+    }
+    Fork forkedGatling = new Fork(GATLING_MAIN_CLASS, testClasspath, forkJvmArgs, forkArgs, toolchain, propagateSystemProperties, pluginWorkFolder, getLog());
+    if (classDataSharing) {
+      forkedGatling.setClassDataSharingFolder(classDataSharingFolder());
+    }
+    File recording = generatesReportsOnly ? null : flightRecordingFile();
+    if (recording != null) {
+      forkedGatling.setFlightRecording(recording, flightRecordingSettings);
+    }
+    Fork.Running running;
     try {
-      forkedGatling.run();
+      if (graphiteReceiver != null) {
+        soakRecorder.start();
+        graphiteReceiver.start();
+      }
+      running = forkedGatling.start();
+    } catch (IOException e) {
+      if (graphiteReceiver != null) {
+        graphiteReceiver.close();
+        soakRecorder.close();
+      }
+      throw e;
+    }
+    registerRunningFork(running);
+    try {
+      if (sampler != null) {
+        sampler.start();
+      }
+      running.waitFor();
     } catch (ExecuteException e) {
       if (e.getExitValue() == 2)
         throw new GatlingSimulationAssertionsFailedException(e);
       else
         throw e; /* issue 1482*/
+    } finally {
+      if (graphiteReceiver != null) {
+        finishSoakRecording(graphiteReceiver, soakRecorder);
+      }
+      if (recording != null) {
+        finishFlightRecording(recording, runsFolder, previousRuns, runFolderPrefix(gatlingArgs));
+      }
+      if (sampler != null) {
+        finishTelemetry(sampler, runsFolder, previousRuns, runFolderPrefix(gatlingArgs));
+      }
+    }
+  }
+
+  /**
+   * @param runFolderPrefix start of the name of the run folder, null when unknown
+   * @return the recorder of the metrics of a soak test, in a folder named like a run folder
+   */
+  private SoakRecorder soakRecorder(File runsFolder, String runFolderPrefix) {
+    File soakFolder = new File(runsFolder, (runFolderPrefix != null ? runFolderPrefix : "") + "soak-" + System.currentTimeMillis());
+    return new SoakRecorder(soakFolder, TimeUnit.MINUTES.toMillis(soakSegmentMinutes), soakRetainedSegments, getLog());
+  }
+
+  private void finishSoakRecording(GraphiteReceiver graphiteReceiver, SoakRecorder soakRecorder) {
+    try {
+      try {
+        graphiteReceiver.close();
+      } finally {
+        soakRecorder.close();
+      }
+    } catch (IOException e) {
+      // must not hide the outcome of the run
+      getLog().warn("Failed to write the soak test metrics in " + soakRecorder.getFolder() + ": " + e.getMessage());
+    }
+    getLog().info("Soak test metrics aggregated per minute in " + soakRecorder.getFolder() + ":");
+    for (String line : soakRecorder.summary()) {
+      getLog().info(line);
+    }
+  }
+
+  /**
+   * Opens JMX in the fork with the given JVM args to sample its telemetry, when enabled.
+   *
+   * @return the sampler to start once the fork started, null when disabled
+   */
+  private JvmTelemetrySampler telemetrySampler(List<String> forkJvmArgs) throws IOException {
+    if (!injectorTelemetry || reportsOnly != null) {
+      return null;
+    }
+    int port = MojoUtils.freeLocalPort();
+    forkJvmArgs.addAll(JvmTelemetrySampler.jmxJvmArgs(port));
+    return new JvmTelemetrySampler(port, telemetryCsvFile(), TimeUnit.SECONDS.toMillis(injectorTelemetryIntervalSeconds), injectorTelemetrySamples, getLog());
+  }
+
+  private File telemetryCsvFile() {
+    return new File(pluginWorkFolder, "telemetry-" + System.nanoTime() + ".csv");
+  }
+
+  /**
+   * Moves the telemetry next to the results of the run and flags an injector that was saturated.
+   *
+   * @param runFolderPrefix start of the name of the run folder, null when unknown
+   */
+  private void finishTelemetry(JvmTelemetrySampler sampler, File runsFolder, Set<String> previousRuns, String runFolderPrefix) {
+    try {
+      sampler.close();
+    } catch (IOException e) {
+      // must not hide the outcome of the run
+      getLog().warn("Failed to write the Gatling JVM telemetry " + sampler.getCsvFile() + ": " + e.getMessage());
+    }
+    finishTelemetry(sampler.segment(), runsFolder, previousRuns, runFolderPrefix);
+  }
+
+  /**
+   * Moves the telemetry of a simulation next to the results of its run and flags an injector that was saturated.
+   *
+   * @param runFolderPrefix start of the name of the run folder, null when unknown
+   */
+  private void finishTelemetry(JvmTelemetrySampler.Segment segment, File runsFolder, Set<String> previousRuns, String runFolderPrefix) {
+    File target;
+    try {
+      target = moveToRunFolder(segment.getCsvFile(), JvmTelemetrySampler.CSV_FILE, runsFolder, previousRuns, runFolderPrefix);
+    } catch (IOException e) {
+      getLog().warn("Failed to write the Gatling JVM telemetry " + segment.getCsvFile() + ": " + e.getMessage());
+      target = segment.getCsvFile();
+    }
+    getLog().info("Gatling JVM telemetry: " + segment.getSummary() + ", written to " + target);
+
+    List<String> reasons = segment.getSaturationReasons();
+    if (!reasons.isEmpty()) {
+      String saturation = "Injector saturated: " + String.join(", ", reasons);
+      getLog().warn(saturation + ". Response times may be caused by the Gatling JVM rather than the system under test, see " + target);
+      injectorSaturations.add(saturation);
+    }
+  }
+
+  /**
+   * @return the file the fork is recorded into, null when disabled
+   */
+  private File flightRecordingFile() {
+    if (!flightRecording || reportsOnly != null) {
+      return null;
     }
+    return new File(pluginWorkFolder, "jfr/recording-" + System.nanoTime() + ".jfr");
+  }
+
+  /**
+   * Moves the recording of an exited fork next to the results of the run and logs its summary.
+   *
+   * @param runFolderPrefix start of the name of the run folder, null when unknown
+   */
+  private void finishFlightRecording(File recording, File runsFolder, Set<String> previousRuns, String runFolderPrefix) {
+    if (!recording.isFile()) {
+      // the Java version of the fork doesn't support it, or the fork was killed
+      return;
+    }
+    try {
+      File target = moveToRunFolder(recording, FlightRecordingSummary.RECORDING_FILE, runsFolder, previousRuns, runFolderPrefix);
+      FlightRecordingSummary summary = FlightRecordingSummary.read(target);
+      if (summary == null) {
+        getLog().info("Flight recording of the Gatling JVM written to " + target + ", Maven needs Java 11 or later to summarize it");
+        return;
+      }
+      File summaryFile = new File(target.getParentFile(), target.getName().replaceFirst("\\.jfr$", "") + "-summary.txt");
+      List<String> lines = summary.lines();
+      Files.write(summaryFile.toPath(), lines, StandardCharsets.UTF_8);
+      getLog().info("Flight recording of the Gatling JVM written to " + target + ":");
+      for (String line : lines) {
+        getLog().info(line);
+      }
+    } catch (IOException e) {
+      getLog().warn("Failed to summarize the flight recording " + recording + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Moves a file into the single run folder created since the previous runs, or next to the run folders under a
+   * unique name when it can't be told which run it belongs to.
+   *
+   * @param runsFolder results folder of the run
+   * @param runFolderPrefix start of the name of the run folder, null when unknown
+   * @return the moved file
+   */
+  private File moveToRunFolder(File file, String name, File runsFolder, Set<String> previousRuns, String runFolderPrefix) throws IOException {
+    File[] runs = runsFolder.listFiles(folder -> folder.isDirectory() && !previousRuns.contains(folder.getName())
+            && (runFolderPrefix == null || folder.getName().startsWith(runFolderPrefix)));
+    File target = runs != null && runs.length == 1
+            ? new File(runs[0], name)
+            : new File(runsFolder, "injector-" + file.getName());
+    Files.createDirectories(runsFolder.toPath());
+    Files.move(file.toPath(), target.toPath(), REPLACE_EXISTING);
+    return target;
+  }
+
+  /**
+   * Gatling names the run folder after the output directory base name, or the simulation class in lower case.
+   */
+  private String runFolderPrefix(List<String> gatlingArgs) {
+    String simulation = null;
+    for (int i = 0; i < gatlingArgs.size() - 1; i++) {
+      if ("-on".equals(gatlingArgs.get(i))) {
+        return gatlingArgs.get(i + 1) + "-";
+      } else if ("-s".equals(gatlingArgs.get(i))) {
+        simulation = gatlingArgs.get(i + 1);
+      }
+    }
+    return simulation == null ? null : simulation.substring(simulation.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT) + "-";
+  }
+
+  private int shardCount() {
+    return shards > 0 ? shards : Math.max(1, JvmAutoTuning.availableCores() / 4);
+  }
+
+  /**
+   * Runs a simulation in several Gatling JVMs at the same time, each with its part of the load and its own results
+   * folder, then merges their logs into one run and generates its reports.
+   */
+  private void executeSharded(List<String> jvmArgs, List<String> gatlingArgs, List<String> testClasspath, Toolchain toolchain, int shardCount) throws Exception {
+    String runFolderPrefix = runFolderPrefix(gatlingArgs);
+    String runName = runFolderPrefix + System.currentTimeMillis();
+    File shardsFolder = new File(resultsFolder, runName + "-shards");
+    Files.createDirectories(shardsFolder.toPath());
+    if (tailer != null) {
+      tailer.follow(shardsFolder);
+    }
+    ForkBudget budget = new ForkBudget(shardCount, parallelCoresBudget, parallelHeapBudget);
+    getLog().info(String.format("Running %s in %d shards: %s.", runName, shardCount, budget));
+
+    ExecutorService pool = Executors.newFixedThreadPool(shardCount);
+    List<Future<?>> runs = new ArrayList<>();
+    try {
+      for (int i = 0; i < shardCount; i++) {
+        List<String> shardJvmArgs = new ArrayList<>(jvmArgs);
+        shardJvmArgs.addAll(budget.jvmArgs());
+        shardJvmArgs.add("-Dgatling.shard.index=" + i);
+        shardJvmArgs.add("-Dgatling.shard.count=" + shardCount);
+        // the shards start in the same millisecond, their run folders need distinct names
+        List<String> shardArgs = withArg(gatlingArgs, "-rf", shardsFolder.getCanonicalPath());
+        shardArgs = withArg(shardArgs, "-on", runFolderPrefix + "shard" + i);
+        if (!shardArgs.contains("-nr")) {
+          shardArgs.add("-nr");
+        }
+        final List<String> args = shardArgs;
+        runs.add(pool.submit(() -> {
+          executeGatling(shardJvmArgs, args, testClasspath, toolchain);
+          return null;
+        }));
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    Exception failure = null;
+    GatlingSimulationAssertionsFailedException assertionsFailed = null;
+    for (Future<?> run : runs) {
+      try {
+        run.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof GatlingSimulationAssertionsFailedException) {
+          // each shard checks the assertions on its part of the load only
+          assertionsFailed = (GatlingSimulationAssertionsFailedException) e.getCause();
+        } else if (failure == null) {
+          failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+
+    File[] shardRuns = shardsFolder.listFiles(file -> new File(file, SimulationLogTailer.SIMULATION_LOG).isFile());
+    if (shardRuns == null || shardRuns.length != shardCount) {
+      throw new IOException(String.format("Expected the results of %d shards in %s, found %d", shardCount, shardsFolder, shardRuns == null ? 0 : shardRuns.length));
+    }
+    Arrays.sort(shardRuns);
+    List<File> simulationLogs = new ArrayList<>();
+    for (File shardRun : shardRuns) {
+      simulationLogs.add(new File(shardRun, SimulationLogTailer.SIMULATION_LOG));
+    }
+    if (tailer != null) {
+      // its requests were already recorded from the shards
+      tailer.ignore(runName);
+    }
+    File mergedLog = new File(new File(resultsFolder, runName), SimulationLogTailer.SIMULATION_LOG);
+    long records = SimulationLogMerger.merge(simulationLogs, mergedLog);
+    getLog().info(String.format("Merged %d records of %d shards into %s", records, shardCount, mergedLog));
+
+    if (noReports) {
+      if (assertionsFailed != null) {
+        throw assertionsFailed;
+      }
+      return;
+    }
+    List<String> reportArgs = withArg(withoutArg(gatlingArgs, "-s"), "-ro", runName);
+    executeGatling(jvmArgs, reportArgs, testClasspath, toolchain);
+  }
+
+  /**
+   * @return the value of the given Gatling option, null when not set
+   */
+  private static String argValue(List<String> gatlingArgs, String option) {
+    int index = gatlingArgs.indexOf(option);
+    return index >= 0 && index < gatlingArgs.size() - 1 ? gatlingArgs.get(index + 1) : null;
+  }
+
+  /**
+   * @return a copy of the Gatling args with the given option set to the value
+   */
+  private static List<String> withArg(List<String> gatlingArgs, String option, String value) {
+    List<String> args = withoutArg(gatlingArgs, option);
+    args.add(option);
+    args.add(value);
+    return args;
+  }
+
+  /**
+   * @return a copy of the Gatling args without the given option and its value
+   */
+  private static List<String> withoutArg(List<String> gatlingArgs, String option) {
+    List<String> args = new ArrayList<>(gatlingArgs);
+    int index = args.indexOf(option);
+    if (index >= 0) {
+      args.subList(index, Math.min(index + 2, args.size())).clear();
+    }
+    return args;
+  }
+
+  private void checkGatlingStatus(int status) throws ExecuteException {
+    if (status == 2) {
+      throw new GatlingSimulationAssertionsFailedException(new ExecuteException("Gatling returned non-zero value: " + status, status));
+    } else if (status != 0) {
+      throw new ExecuteException("Gatling returned non-zero value: " + status, status);
+    }
+  }
+
+  /**
+   * Forks running simulations, destroyed on abort.
+   */
+  private void registerRunningFork(Fork.Running running) {
+    runningForks.removeIf(Fork.Running::isDone);
+    runningForks.add(running);
+  }
+
+  private void destroyRunningForks() {
+    for (Fork.Running running : runningForks) {
+      if (!running.isDone()) {
+        running.destroy();
+      }
+    }
+  }
+
+  private File classDataSharingFolder() {
+    return new File(pluginWorkFolder, "cds");
   }
 
   private void copyJUnitReports() throws MojoExecutionException {
@@ -526,7 +1702,7 @@ public class GatlingMojo extends AbstractGatlingMojo {
       completeGatlingJvmArgs.addAll(jvmArgs);
     }
     if (overrideGatlingJvmArgs) {
-      completeGatlingJvmArgs.addAll(GATLING_JVM_ARGS);
+      completeGatlingJvmArgs.addAll(autoTuneJvm ? JvmAutoTuning.withoutTunedDefaults(GATLING_JVM_ARGS) : GATLING_JVM_ARGS);
     }
     return completeGatlingJvmArgs;
   }
@@ -593,6 +1769,22 @@ public class GatlingMojo extends AbstractGatlingMojo {
     return args;
   }
 
+  /**
+   * @return a key that changes when a jar of the classpath is added, removed or rebuilt, such as a snapshot
+   * dependency with simulation base classes. The classes of the directories are fingerprinted one by one.
+   */
+  private static String classpathKey(List<String> classpathElements) {
+    List<String> keyElements = new ArrayList<>();
+    for (String element : classpathElements) {
+      keyElements.add(element);
+      File file = new File(element);
+      if (file.isFile()) {
+        keyElements.add(file.length() + " " + file.lastModified());
+      }
+    }
+    return MojoUtils.sha1Hex(keyElements);
+  }
+
   /**
    * Resolve simulation files to execute from the simulation folder.
    *
@@ -601,36 +1793,82 @@ public class GatlingMojo extends AbstractGatlingMojo {
   private List<String> resolveSimulations() {
 
     try {
-      ClassLoader testClassLoader = new URLClassLoader(testClassPathUrls());
-
-      Class<?> simulationClass = testClassLoader.loadClass("io.gatling.core.scenario.Simulation");
       List<String> includes = MojoUtils.arrayAsListEmptyIfNull(this.includes);
       List<String> excludes = MojoUtils.arrayAsListEmptyIfNull(this.excludes);
 
-      List<String> simulationsClasses = new ArrayList<>();
+      String[] classFiles = compiledClassFiles();
+      String classpathKey = classpathKey(mavenProject.getTestClasspathElements());
+      String filterKey = includes + " " + excludes;
+      SimulationCache cache = loadSimulationCache();
+      if (cache.isUpToDate(compiledClassesFolder, classFiles, classpathKey, filterKey)) {
+        getLog().debug("Compiled classes didn't change, using the cached simulations.");
+        return cache.getSimulations();
+      }
 
-      for (String classFile: compiledClassFiles()) {
-        String className = pathToClassName(classFile);
+      SimulationCache updatedCache = new SimulationCache(classpathKey, filterKey);
+      try (SimulationClassScanner scanner = new SimulationClassScanner(testClassPathUrls())) {
+        if (classpathKey.equals(cache.getClasspathKey())) {
+          scanner.addLoaded(cache.getLoaded());
+        }
 
-        boolean isIncluded = includes.isEmpty() || includes.contains(className);
-        boolean isExcluded =  excludes.contains(className);
+        List<String> candidates = new ArrayList<>();
+        int changedClasses = 0;
 
-        if (isIncluded && !isExcluded) {
-          // check if the class is a concrete Simulation
-          Class<?> clazz = testClassLoader.loadClass(className);
-          if (simulationClass.isAssignableFrom(clazz) && isConcreteClass(clazz)) {
-            simulationsClasses.add(className);
+        for (String classFile: classFiles) {
+          File file = new File(compiledClassesFolder, classFile);
+          SimulationCache.Entry entry = cache.lookup(classFile, file);
+          if (entry == null) {
+            entry = SimulationCache.Entry.read(file);
+            changedClasses++;
+          }
+          updatedCache.put(classFile, entry);
+          // every header is needed to follow the hierarchy, not only the included ones
+          scanner.add(entry.getHeader());
+          String className = pathToClassName(classFile);
+
+          boolean isIncluded = includes.isEmpty() || includes.contains(className);
+          boolean isExcluded =  excludes.contains(className);
+
+          if (isIncluded && !isExcluded) {
+            candidates.add(className);
           }
         }
-      }
 
-      return simulationsClasses;
+        // check which candidates are concrete Simulations
+        List<String> simulationsClasses = scanner.simulations(candidates);
+        getLog().debug(String.format("Found %d simulations in %d classes, %d classes changed, %d classes had to be loaded.",
+                simulationsClasses.size(), scanner.headers().size(), changedClasses, scanner.getLoadedClasses()));
+
+        updatedCache.putLoaded(scanner.getLoaded());
+        updatedCache.setSimulations(simulationsClasses);
+        saveSimulationCache(updatedCache);
+        return simulationsClasses;
+      }
 
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
 
+  private SimulationCache loadSimulationCache() {
+    File cacheFile = new File(pluginWorkFolder, SimulationCache.FILE_NAME);
+    try {
+      return SimulationCache.load(cacheFile);
+    } catch (IOException e) {
+      getLog().warn("Ignoring simulation cache " + cacheFile + ": " + e.getMessage());
+      return new SimulationCache("", "");
+    }
+  }
+
+  private void saveSimulationCache(SimulationCache cache) {
+    File cacheFile = new File(pluginWorkFolder, SimulationCache.FILE_NAME);
+    try {
+      cache.save(cacheFile);
+    } catch (IOException e) {
+      getLog().warn("Failed to write simulation cache " + cacheFile + ": " + e.getMessage());
+    }
+  }
+
   private URL[] testClassPathUrls() throws DependencyResolutionRequiredException, MalformedURLException {
 
     List<String> testClasspathElements = mavenProject.getTestClasspathElements();
@@ -657,7 +1895,61 @@ public class GatlingMojo extends AbstractGatlingMojo {
     return path.substring(0, path.length() - ".class".length()).replace(File.separatorChar, '.');
   }
 
-  private boolean isConcreteClass(Class<?> clazz) {
-    return !clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers());
+  /**
+   * Runs every simulation in its own agent JVM, started while the previous simulation runs.
+   */
+  private final class PipelinedRunner implements SimulationRunner, Closeable {
+
+    private final Toolchain toolchain;
+    private final List<String> jvmArgs;
+    private final List<String> testClasspath;
+    private int remaining;
+    private GatlingAgentSession next;
+    private boolean fallback;
+
+    private PipelinedRunner(Toolchain toolchain, List<String> jvmArgs, List<String> testClasspath, int simulations) throws Exception {
+      this.toolchain = toolchain;
+      this.jvmArgs = jvmArgs;
+      this.testClasspath = testClasspath;
+      this.remaining = simulations;
+      this.next = startAgent(toolchain, jvmArgs, testClasspath);
+    }
+
+    @Override
+    public void run(List<String> gatlingArgs) throws Exception {
+      remaining--;
+      if (fallback) {
+        executeGatling(jvmArgs, gatlingArgs, testClasspath, toolchain);
+        return;
+      }
+      try (GatlingAgentSession current = next) {
+        next = null;
+        if (!current.connect()) {
+          getLog().warn("pipelineForks can't run simulations in the started JVMs, falling back to one Gatling JVM per simulation.");
+          fallback = true;
+          executeGatling(jvmArgs, gatlingArgs, testClasspath, toolchain);
+          return;
+        }
+        if (remaining > 0) {
+          next = startAgent(toolchain, jvmArgs, testClasspath);
+        }
+        runInAgent(current, gatlingArgs);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (next != null) {
+        next.close();
+      }
+    }
+  }
+
+  private interface SimulationRunner {
+
+    /**
+     * @param gatlingArgs the Gatling arguments of the simulation to run
+     */
+    void run(List<String> gatlingArgs) throws Exception;
   }
 }
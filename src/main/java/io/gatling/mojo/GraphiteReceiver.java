@@ -0,0 +1,135 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Receives the metrics of the Gatling graphite writer of the forks on a loopback port, with the graphite plaintext
+ * protocol over TCP, and hands them to a {@link SoakRecorder}.
+ */
+final class GraphiteReceiver implements Closeable {
+
+  static final String ROOT_PATH_PREFIX = "gatling";
+
+  private final ServerSocket server;
+  private final SoakRecorder recorder;
+  private final Log log;
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+  private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "gatling-graphite-receiver");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  GraphiteReceiver(SoakRecorder recorder, Log log) throws IOException {
+    this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    this.recorder = recorder;
+    this.log = log;
+  }
+
+  /**
+   * System properties making the Gatling of a fork send its metrics to the receiver instead of writing its
+   * simulation.log.
+   */
+  List<String> jvmArgs() {
+    return Arrays.asList(
+            "-Dgatling.data.writers.0=console",
+            "-Dgatling.data.writers.1=graphite",
+            "-Dgatling.data.graphite.host=127.0.0.1",
+            "-Dgatling.data.graphite.port=" + server.getLocalPort(),
+            "-Dgatling.data.graphite.protocol=tcp",
+            "-Dgatling.data.graphite.rootPathPrefix=" + ROOT_PATH_PREFIX,
+            "-Dgatling.data.graphite.writeInterval=1");
+  }
+
+  void start() {
+    executor.execute(this::accept);
+  }
+
+  private void accept() {
+    while (!server.isClosed()) {
+      try {
+        Socket socket = server.accept();
+        connections.add(socket);
+        executor.execute(() -> receive(socket));
+      } catch (IOException e) {
+        if (!server.isClosed()) {
+          log.debug("Graphite receiver failed to accept: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void receive(Socket socket) {
+    boolean recordFailed = false;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          recorder.record(line);
+        } catch (IOException e) {
+          // keep receiving, a soak test runs for hours and the next writes may succeed
+          if (!recordFailed) {
+            log.warn("Failed to record the soak test metrics: " + e.getMessage());
+            recordFailed = true;
+          }
+        }
+      }
+    } catch (IOException e) {
+      if (!server.isClosed()) {
+        log.warn("Graphite connection of a Gatling JVM lost, its metrics aren't recorded anymore: " + e.getMessage());
+      }
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  /**
+   * Stops receiving, after the forks closed their connections or at most a few seconds.
+   */
+  @Override
+  public void close() throws IOException {
+    server.close();
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+        for (Socket connection : connections) {
+          connection.close();
+        }
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
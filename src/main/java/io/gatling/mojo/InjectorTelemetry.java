@@ -0,0 +1,106 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+/**
+ * Latest telemetry sample of the forked Gatling JVMs, shared with the Perfana keep alive calls.
+ */
+final class InjectorTelemetry {
+
+  private volatile Sample latest;
+
+  void publish(Sample sample) {
+    latest = sample;
+  }
+
+  /**
+   * @return the latest sample, null when none was taken yet
+   */
+  Sample latest() {
+    return latest;
+  }
+
+  /**
+   * Telemetry of a forked JVM at a point in time, GC figures are since the previous sample.
+   */
+  static final class Sample {
+
+    private final long timestamp;
+    private final long heapUsed;
+    private final long heapCommitted;
+    private final long heapMax;
+    private final long gcMillis;
+    private final long gcCount;
+    private final double gcPercentage;
+    private final double processCpuPercentage;
+    private final double systemCpuPercentage;
+    private final int threads;
+
+    Sample(long timestamp, long heapUsed, long heapCommitted, long heapMax, long gcMillis, long gcCount,
+           double gcPercentage, double processCpuPercentage, double systemCpuPercentage, int threads) {
+      this.timestamp = timestamp;
+      this.heapUsed = heapUsed;
+      this.heapCommitted = heapCommitted;
+      this.heapMax = heapMax;
+      this.gcMillis = gcMillis;
+      this.gcCount = gcCount;
+      this.gcPercentage = gcPercentage;
+      this.processCpuPercentage = processCpuPercentage;
+      this.systemCpuPercentage = systemCpuPercentage;
+      this.threads = threads;
+    }
+
+    long getTimestamp() {
+      return timestamp;
+    }
+
+    long getHeapUsed() {
+      return heapUsed;
+    }
+
+    long getHeapCommitted() {
+      return heapCommitted;
+    }
+
+    long getHeapMax() {
+      return heapMax;
+    }
+
+    long getGcMillis() {
+      return gcMillis;
+    }
+
+    long getGcCount() {
+      return gcCount;
+    }
+
+    double getGcPercentage() {
+      return gcPercentage;
+    }
+
+    double getProcessCpuPercentage() {
+      return processCpuPercentage;
+    }
+
+    double getSystemCpuPercentage() {
+      return systemCpuPercentage;
+    }
+
+    int getThreads() {
+      return threads;
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Sizes the heap, garbage collector and GC threads of the Gatling JVMs from the memory and cores of the host, or
+ * the limits of the cgroup (container) Maven runs in, shared by the forks running at the same time.
+ * <p>
+ * JVM args given explicitly win: the heap, collector, pre-touch and thread counts are only tuned when not set.
+ */
+final class JvmAutoTuning {
+
+  private static final File CGROUP_ROOT = new File("/sys/fs/cgroup");
+  private static final File PROC_SELF_CGROUP = new File("/proc/self/cgroup");
+
+  private static final long MIN_RESERVED_MEGABYTES = 1024;
+  private static final long MIN_HEAP_MEGABYTES = 512;
+  private static final long PARALLEL_GC_MAX_HEAP_MEGABYTES = 2048;
+  private static final long ZGC_MIN_HEAP_MEGABYTES = 16 * 1024;
+  // above 32g the JVM can't use compressed object pointers anymore, a slightly bigger heap holds less
+  private static final long COMPRESSED_OOPS_MAX_HEAP_MEGABYTES = 31 * 1024;
+
+  private static final Pattern GC_SELECTION = Pattern.compile("-XX:\\+Use\\w*GC");
+  private static final Pattern HEAP_SIZE = Pattern.compile("-Xmx.*|-XX:Max(RAM|RAMPercentage|RAMFraction)=.*");
+  // default Gatling JVM args replaced by the tuning
+  private static final Pattern TUNED_DEFAULT = Pattern.compile("-Xm[sx].*|-XX:\\+UseG1GC|-XX:(MaxGCPauseMillis|G1HeapRegionSize|InitiatingHeapOccupancyPercent)=.*");
+
+  private final long memoryMegabytes;
+  private final int cores;
+  private final boolean limitedByCgroup;
+  private final int forks;
+  private final int coresPerFork;
+  private final long heapMegabytes;
+  private final String collector;
+  private final List<String> jvmArgs = new ArrayList<>();
+
+  /**
+   * @param memoryMegabytes memory of the host or the cgroup
+   * @param cores cores of the host or the cgroup
+   * @param forks number of Gatling JVMs running at the same time
+   * @param javaVersion major version of the Java of the forks
+   * @param explicitJvmArgs JVM args given by the user, which win over the tuning
+   */
+  JvmAutoTuning(long memoryMegabytes, int cores, boolean limitedByCgroup, int forks, int javaVersion, List<String> explicitJvmArgs) {
+    this.memoryMegabytes = memoryMegabytes;
+    this.cores = cores;
+    this.limitedByCgroup = limitedByCgroup;
+    this.forks = Math.max(1, forks);
+
+    String explicitCores = lastValue(explicitJvmArgs, "-XX:ActiveProcessorCount=");
+    this.coresPerFork = explicitCores != null ? Integer.parseInt(explicitCores) : Math.max(1, cores / this.forks);
+
+    // leave memory to the OS, Maven and the compiler daemon, then to direct buffers, metaspace and thread stacks
+    long reserved = Math.max(MIN_RESERVED_MEGABYTES, memoryMegabytes / 4);
+    long heap = Math.max(MIN_HEAP_MEGABYTES, (memoryMegabytes - reserved) / this.forks * 3 / 4);
+    String explicitHeap = lastValue(explicitJvmArgs, "-Xmx");
+    boolean heapGiven = explicitHeap != null || hasArg(explicitJvmArgs, HEAP_SIZE);
+    if (explicitHeap != null) {
+      heap = ForkBudget.parseMegabytes(explicitHeap);
+    }
+
+    String gc;
+    if (javaVersion >= 15 && heap >= ZGC_MIN_HEAP_MEGABYTES) {
+      gc = "ZGC";
+    } else {
+      if (!heapGiven) {
+        heap = Math.min(heap, COMPRESSED_OOPS_MAX_HEAP_MEGABYTES);
+      }
+      gc = coresPerFork < 2 || heap < PARALLEL_GC_MAX_HEAP_MEGABYTES ? "Parallel" : "G1";
+    }
+    this.heapMegabytes = heap;
+
+    if (!heapGiven) {
+      // committing and touching the whole heap up front avoids page faults during the test
+      jvmArgs.add("-Xms" + heap + "m");
+      jvmArgs.add("-Xmx" + heap + "m");
+      if (!hasArg(explicitJvmArgs, "-XX:[+-]AlwaysPreTouch")) {
+        jvmArgs.add("-XX:+AlwaysPreTouch");
+      }
+    }
+
+    if (hasArg(explicitJvmArgs, GC_SELECTION)) {
+      this.collector = "explicit GC";
+    } else {
+      this.collector = gc;
+      switch (gc) {
+        case "ZGC":
+          jvmArgs.add("-XX:+UseZGC");
+          if (javaVersion == 21 || javaVersion == 22) {
+            // generational by default from Java 23
+            jvmArgs.add("-XX:+ZGenerational");
+          }
+          break;
+        case "G1":
+          jvmArgs.add("-XX:+UseG1GC");
+          jvmArgs.add("-XX:MaxGCPauseMillis=30");
+          jvmArgs.add("-XX:InitiatingHeapOccupancyPercent=75");
+          break;
+        default:
+          jvmArgs.add("-XX:+UseParallelGC");
+      }
+    }
+
+    if (explicitCores == null) {
+      jvmArgs.add("-XX:ActiveProcessorCount=" + coresPerFork);
+    }
+    if (!hasArg(explicitJvmArgs, "-XX:ParallelGCThreads=.*")) {
+      // the JVM default for the cores of the fork, set so that concurrent forks don't each size for the whole host
+      jvmArgs.add("-XX:ParallelGCThreads=" + (coresPerFork <= 8 ? coresPerFork : 8 + (coresPerFork - 8) * 5 / 8));
+    }
+  }
+
+  /**
+   * Detects the memory and cores of the host or the cgroup Maven runs in, forks inherit its cgroup.
+   */
+  static JvmAutoTuning detect(int forks, int javaVersion, List<String> explicitJvmArgs) {
+    long hostMemory = hostMemoryMegabytes();
+    int hostCores = Runtime.getRuntime().availableProcessors();
+    long cgroupMemory = cgroupMemoryMegabytes();
+    int cgroupCores = cgroupCores();
+    long memory = Math.min(hostMemory, cgroupMemory);
+    int cores = Math.min(hostCores, cgroupCores);
+    boolean limited = cgroupMemory < hostMemory || cgroupCores < hostCores;
+    return new JvmAutoTuning(memory, cores, limited, forks, javaVersion, explicitJvmArgs);
+  }
+
+  /**
+   * @return the cores of the host, or of the cgroup Maven runs in when limited
+   */
+  static int availableCores() {
+    return Math.min(Runtime.getRuntime().availableProcessors(), cgroupCores());
+  }
+
+  /**
+   * @return the default Gatling JVM args without the ones the tuning replaces
+   */
+  static List<String> withoutTunedDefaults(List<String> defaultJvmArgs) {
+    List<String> args = new ArrayList<>();
+    for (String arg : defaultJvmArgs) {
+      if (!TUNED_DEFAULT.matcher(arg).matches()) {
+        args.add(arg);
+      }
+    }
+    return args;
+  }
+
+  /**
+   * JVM args to append to the args of each fork.
+   */
+  List<String> jvmArgs() {
+    return jvmArgs;
+  }
+
+  private static long hostMemoryMegabytes() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize() >> 20;
+    }
+    // not a HotSpot JVM, assume what Maven got
+    return Runtime.getRuntime().maxMemory() >> 20;
+  }
+
+  private static long cgroupMemoryMegabytes() {
+    long limit = isCgroupV2()
+            ? cgroupLimit("", "memory.max")
+            : cgroupLimit("memory", "memory.limit_in_bytes");
+    return limit == Long.MAX_VALUE ? Long.MAX_VALUE : limit >> 20;
+  }
+
+  private static int cgroupCores() {
+    if (isCgroupV2()) {
+      // "max 100000" or "<quota> <period>"
+      String cpuMax = readCgroupFile("", "cpu.max");
+      if (cpuMax != null) {
+        String[] parts = cpuMax.split("\\s+");
+        if (parts.length == 2 && !"max".equals(parts[0])) {
+          return quotaCores(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        }
+      }
+      return Integer.MAX_VALUE;
+    }
+    String quota = readCgroupFile("cpu", "cpu.cfs_quota_us");
+    String period = readCgroupFile("cpu", "cpu.cfs_period_us");
+    if (quota != null && period != null && Long.parseLong(quota) > 0) {
+      return quotaCores(Long.parseLong(quota), Long.parseLong(period));
+    }
+    return Integer.MAX_VALUE;
+  }
+
+  private static int quotaCores(long quota, long period) {
+    return (int) Math.max(1, (quota + period - 1) / period);
+  }
+
+  private static boolean isCgroupV2() {
+    return new File(CGROUP_ROOT, "cgroup.controllers").isFile();
+  }
+
+  /**
+   * @return the lowest limit of the cgroup of Maven and its parents, Long.MAX_VALUE when unlimited
+   */
+  private static long cgroupLimit(String controller, String fileName) {
+    long limit = Long.MAX_VALUE;
+    for (File folder : cgroupFolders(controller)) {
+      String value = readFile(new File(folder, fileName));
+      if (value != null && !"max".equals(value)) {
+        try {
+          long parsed = Long.parseLong(value);
+          // cgroup v1 reports no limit as a number close to Long.MAX_VALUE
+          if (parsed > 0 && parsed < Long.MAX_VALUE / 2) {
+            limit = Math.min(limit, parsed);
+          }
+        } catch (NumberFormatException e) {
+          // not a limit
+        }
+      }
+    }
+    return limit;
+  }
+
+  private static String readCgroupFile(String controller, String fileName) {
+    for (File folder : cgroupFolders(controller)) {
+      String value = readFile(new File(folder, fileName));
+      if (value != null) {
+        return value;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Folders of the cgroup of Maven for the given controller, from the deepest to the mount root. In a container,
+   * the cgroup path is the one of the host and only the mount root exists.
+   */
+  private static List<File> cgroupFolders(String controller) {
+    File mount = controller.isEmpty() ? CGROUP_ROOT : new File(CGROUP_ROOT, controller);
+    List<File> folders = new ArrayList<>();
+    String path = cgroupPath(controller);
+    while (path != null && !path.isEmpty() && !"/".equals(path)) {
+      folders.add(new File(mount, path));
+      path = new File(path).getParent();
+    }
+    folders.add(mount);
+    return folders;
+  }
+
+  /**
+   * @return the path of the cgroup of Maven from /proc/self/cgroup, such as "3:memory:/docker/abc" for cgroup v1
+   * or "0::/user.slice" for cgroup v2, null when unknown
+   */
+  private static String cgroupPath(String controller) {
+    String content = readFile(PROC_SELF_CGROUP);
+    if (content == null) {
+      return null;
+    }
+    for (String line : content.split("\n")) {
+      String[] parts = line.split(":", 3);
+      if (parts.length == 3 && (controller.isEmpty() ? "0".equals(parts[0]) : Arrays.asList(parts[1].split(",")).contains(controller))) {
+        return parts[2];
+      }
+    }
+    return null;
+  }
+
+  private static String readFile(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static boolean hasArg(List<String> args, String regex) {
+    return hasArg(args, Pattern.compile(regex));
+  }
+
+  private static boolean hasArg(List<String> args, Pattern pattern) {
+    for (String arg : args) {
+      if (pattern.matcher(arg).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the value of the last arg starting with the given prefix, null when none does
+   */
+  private static String lastValue(List<String> args, String prefix) {
+    String value = null;
+    for (String arg : args) {
+      if (arg.startsWith(prefix)) {
+        value = arg.substring(prefix.length());
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s, %dm heap and %d cores per fork, for %d concurrent forks on %dm memory and %d cores of the %s",
+            collector, heapMegabytes, coresPerFork, forks, memoryMegabytes, cores, limitedByCgroup ? "container" : "host");
+  }
+}
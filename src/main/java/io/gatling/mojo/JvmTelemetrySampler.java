@@ -0,0 +1,331 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Samples GC, heap, CPU and threads of a forked JVM over a loopback JMX connection at a fixed interval, writes
+ * them as CSV, and tells whether the JVM was saturated, in which case the injector rather than the system under
+ * test may explain the response times.
+ * <p>
+ * The process CPU usage is relative to the processors the JVM may use, which are fewer than the ones of the host
+ * when it runs with -XX:ActiveProcessorCount, as in parallel, sharded and auto tuned modes.
+ */
+final class JvmTelemetrySampler implements Closeable {
+
+  static final String CSV_FILE = "injector-telemetry.csv";
+  static final String CSV_HEADER = "timestamp,heapUsedMB,heapCommittedMB,heapMaxMB,gcMillis,gcCount,gcPercentage,processCpuPercentage,systemCpuPercentage,threads";
+
+  private static final double MAX_AVERAGE_GC_PERCENTAGE = 10;
+  private static final double MAX_AVERAGE_CPU_PERCENTAGE = 90;
+  private static final double MAX_HEAP_PERCENTAGE = 90;
+  private static final int HEAP_SAMPLES = 3;
+
+  private final int port;
+  private File csvFile;
+  private final long intervalMillis;
+  private final InjectorTelemetry telemetry;
+  private final Log log;
+
+  private ScheduledExecutorService scheduler;
+  private JMXConnector connector;
+  private MBeanServerConnection connection;
+  // processors of the host over processors of the JVM, process CPU load is relative to the ones of the host
+  private double processCpuScale = 1;
+  private BufferedWriter writer;
+  private long previousGcMillis = -1;
+  private long previousGcCount;
+  private long previousSampleTime;
+
+  private int samples;
+  private double gcPercentageSum;
+  private double cpuPercentageSum;
+  private int fullHeapSamples;
+  private boolean heapSaturated;
+  private int maxThreads;
+
+  /**
+   * @param port JMX port of the fork, opened with {@link #jmxJvmArgs(int)}
+   * @param csvFile file the samples are written to
+   * @param telemetry holder the latest sample is published to
+   */
+  JvmTelemetrySampler(int port, File csvFile, long intervalMillis, InjectorTelemetry telemetry, Log log) {
+    this.port = port;
+    this.csvFile = csvFile;
+    this.intervalMillis = intervalMillis;
+    this.telemetry = telemetry;
+    this.log = log;
+  }
+
+  /**
+   * JMX only listens on the loopback interface, so it doesn't need authentication.
+   */
+  static List<String> jmxJvmArgs(int port) {
+    return Arrays.asList(
+            "-Dcom.sun.management.jmxremote.port=" + port,
+            "-Dcom.sun.management.jmxremote.rmi.port=" + port,
+            "-Dcom.sun.management.jmxremote.host=127.0.0.1",
+            "-Dcom.sun.management.jmxremote.local.only=true",
+            "-Dcom.sun.management.jmxremote.authenticate=false",
+            "-Dcom.sun.management.jmxremote.ssl=false",
+            "-Djava.rmi.server.hostname=127.0.0.1");
+  }
+
+  void start() throws IOException {
+    openCsvFile();
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "gatling-jvm-telemetry");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void openCsvFile() throws IOException {
+    Files.createDirectories(csvFile.getParentFile().toPath());
+    writer = Files.newBufferedWriter(csvFile.toPath(), StandardCharsets.UTF_8);
+    writer.write(CSV_HEADER);
+    writer.newLine();
+  }
+
+  /**
+   * Ends the samples of a simulation when the JVM runs several, and writes the following samples to another file.
+   *
+   * @param nextCsvFile file the following samples are written to
+   * @return the CSV file, summary and saturation of the ended samples
+   */
+  synchronized Segment rollOver(File nextCsvFile) throws IOException {
+    Segment segment = segment();
+    writer.close();
+    csvFile = nextCsvFile;
+    samples = 0;
+    gcPercentageSum = 0;
+    cpuPercentageSum = 0;
+    fullHeapSamples = 0;
+    heapSaturated = false;
+    maxThreads = 0;
+    openCsvFile();
+    return segment;
+  }
+
+  private synchronized void sample() {
+    try {
+      if (connection == null) {
+        // the fork may still be starting
+        JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://127.0.0.1:" + port + "/jmxrmi");
+        connector = JMXConnectorFactory.connect(url);
+        connection = connector.getMBeanServerConnection();
+        Object processors = connection.getAttribute(new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME), "AvailableProcessors");
+        int hostProcessors = Runtime.getRuntime().availableProcessors();
+        processCpuScale = processors instanceof Number && ((Number) processors).intValue() > 0
+                ? Math.max(1, (double) hostProcessors / ((Number) processors).intValue())
+                : 1;
+      }
+      writeSample(readSample());
+    } catch (IOException | JMException | RuntimeException e) {
+      log.debug("Failed to sample the Gatling JVM: " + e.getMessage());
+      closeConnection();
+    }
+  }
+
+  private InjectorTelemetry.Sample readSample() throws IOException, JMException {
+    long now = System.currentTimeMillis();
+    MemoryMXBean memory = ManagementFactory.newPlatformMXBeanProxy(connection, ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class);
+    MemoryUsage heap = memory.getHeapMemoryUsage();
+
+    long gcMillis = 0;
+    long gcCount = 0;
+    Set<ObjectName> collectors = connection.queryNames(new ObjectName(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*"), null);
+    for (ObjectName collector : collectors) {
+      GarbageCollectorMXBean gc = ManagementFactory.newPlatformMXBeanProxy(connection, collector.toString(), GarbageCollectorMXBean.class);
+      gcMillis += Math.max(0, gc.getCollectionTime());
+      gcCount += Math.max(0, gc.getCollectionCount());
+    }
+
+    ObjectName operatingSystem = new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME);
+    double processCpu = cpuPercentage(connection.getAttribute(operatingSystem, "ProcessCpuLoad"));
+    if (processCpu > 0) {
+      processCpu = Math.min(100, processCpu * processCpuScale);
+    }
+    double systemCpu = cpuPercentage(connection.getAttribute(operatingSystem, "SystemCpuLoad"));
+    int threads = ManagementFactory.newPlatformMXBeanProxy(connection, ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class).getThreadCount();
+
+    long intervalGcMillis = previousGcMillis < 0 ? 0 : gcMillis - previousGcMillis;
+    long intervalGcCount = previousGcMillis < 0 ? 0 : gcCount - previousGcCount;
+    long elapsed = previousGcMillis < 0 ? intervalMillis : Math.max(1, now - previousSampleTime);
+    previousGcMillis = gcMillis;
+    previousGcCount = gcCount;
+    previousSampleTime = now;
+
+    return new InjectorTelemetry.Sample(now, heap.getUsed(), heap.getCommitted(), heap.getMax(),
+            intervalGcMillis, intervalGcCount, Math.min(100, 100.0 * intervalGcMillis / elapsed), processCpu, systemCpu, threads);
+  }
+
+  /**
+   * @return the load as percentage, -1 when not available
+   */
+  private static double cpuPercentage(Object load) {
+    return load instanceof Number && ((Number) load).doubleValue() >= 0 ? ((Number) load).doubleValue() * 100 : -1;
+  }
+
+  private void writeSample(InjectorTelemetry.Sample sample) throws IOException {
+    writer.write(String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%.1f,%.1f,%.1f,%d",
+            sample.getTimestamp(), sample.getHeapUsed() >> 20, sample.getHeapCommitted() >> 20, sample.getHeapMax() >> 20,
+            sample.getGcMillis(), sample.getGcCount(), sample.getGcPercentage(), sample.getProcessCpuPercentage(),
+            sample.getSystemCpuPercentage(), sample.getThreads()));
+    writer.newLine();
+    writer.flush();
+    telemetry.publish(sample);
+
+    samples++;
+    gcPercentageSum += sample.getGcPercentage();
+    cpuPercentageSum += Math.max(0, sample.getProcessCpuPercentage());
+    maxThreads = Math.max(maxThreads, sample.getThreads());
+    if (sample.getHeapMax() > 0 && 100.0 * sample.getHeapUsed() / sample.getHeapMax() > MAX_HEAP_PERCENTAGE) {
+      heapSaturated |= ++fullHeapSamples >= HEAP_SAMPLES;
+    } else {
+      fullHeapSamples = 0;
+    }
+  }
+
+  /**
+   * @return why the JVM was saturated, empty when it wasn't or no sample was taken
+   */
+  synchronized List<String> saturationReasons() {
+    List<String> reasons = new ArrayList<>();
+    if (samples == 0) {
+      return reasons;
+    }
+    double averageGc = gcPercentageSum / samples;
+    double averageCpu = cpuPercentageSum / samples;
+    if (averageGc > MAX_AVERAGE_GC_PERCENTAGE) {
+      reasons.add(String.format(Locale.ROOT, "GC took %.1f%% of the time on average", averageGc));
+    }
+    if (averageCpu > MAX_AVERAGE_CPU_PERCENTAGE) {
+      reasons.add(String.format(Locale.ROOT, "process CPU usage was %.1f%% on average", averageCpu));
+    }
+    if (heapSaturated) {
+      reasons.add(String.format(Locale.ROOT, "heap usage stayed above %.0f%% of the max heap", MAX_HEAP_PERCENTAGE));
+    }
+    return reasons;
+  }
+
+  /**
+   * @return a one line summary of the samples
+   */
+  synchronized String summary() {
+    return samples == 0
+            ? "no sample"
+            : String.format(Locale.ROOT, "%d samples, average GC %.1f%%, average process CPU %.1f%%, max %d threads",
+            samples, gcPercentageSum / samples, cpuPercentageSum / samples, maxThreads);
+  }
+
+  synchronized File getCsvFile() {
+    return csvFile;
+  }
+
+  /**
+   * @return the CSV file, summary and saturation of the samples since the start or the last roll over
+   */
+  synchronized Segment segment() {
+    return new Segment(csvFile, summary(), saturationReasons());
+  }
+
+  private void closeConnection() {
+    connection = null;
+    if (connector != null) {
+      try {
+        connector.close();
+      } catch (IOException e) {
+        // the fork is gone
+      }
+      connector = null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      closeConnection();
+      if (writer != null) {
+        writer.close();
+      }
+    }
+  }
+
+  /**
+   * Samples of one simulation of a JVM.
+   */
+  static final class Segment {
+
+    private final File csvFile;
+    private final String summary;
+    private final List<String> saturationReasons;
+
+    private Segment(File csvFile, String summary, List<String> saturationReasons) {
+      this.csvFile = csvFile;
+      this.summary = summary;
+      this.saturationReasons = saturationReasons;
+    }
+
+    File getCsvFile() {
+      return csvFile;
+    }
+
+    String getSummary() {
+      return summary;
+    }
+
+    List<String> getSaturationReasons() {
+      return saturationReasons;
+    }
+  }
+}
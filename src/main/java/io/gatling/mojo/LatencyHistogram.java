@@ -0,0 +1,145 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+/**
+ * Histogram of response times in milliseconds with a fixed number of log-linear buckets: exact below 64 ms,
+ * then 32 buckets per power of two, so percentiles are within about 2% of the recorded values whatever the
+ * number of recorded values. Not thread safe.
+ */
+final class LatencyHistogram {
+
+  private static final int LINEAR_BUCKETS = 64;
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final long MAX_VALUE = (1L << 32) - 1;
+  static final int BUCKETS = index(MAX_VALUE) + 1;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  void record(long millis) {
+    long value = Math.max(0, Math.min(millis, MAX_VALUE));
+    counts[index(value)]++;
+    count++;
+    sum += value;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  void merge(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /**
+   * Restores a stored histogram.
+   *
+   * @param counts bucket counts, as returned by {@link #getCounts()}
+   */
+  static LatencyHistogram of(long[] counts, long sum, long min, long max) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < BUCKETS; i++) {
+      histogram.counts[i] = counts[i];
+      histogram.count += counts[i];
+    }
+    histogram.sum = sum;
+    histogram.min = histogram.count == 0 ? Long.MAX_VALUE : min;
+    histogram.max = max;
+    return histogram;
+  }
+
+  LatencyHistogram copy() {
+    LatencyHistogram copy = new LatencyHistogram();
+    copy.merge(this);
+    return copy;
+  }
+
+  long getCount() {
+    return count;
+  }
+
+  long getSum() {
+    return sum;
+  }
+
+  long getMin() {
+    return count == 0 ? 0 : min;
+  }
+
+  long getMax() {
+    return max;
+  }
+
+  double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the value below which the given percentage of the recorded values fall, 0 when empty
+   */
+  long percentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.max(min, Math.min(max, value(i)));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Bucket counts, for storage.
+   */
+  long[] getCounts() {
+    return counts;
+  }
+
+  static int index(long value) {
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return the middle of the values of the given bucket
+   */
+  static long value(int index) {
+    if (index < LINEAR_BUCKETS) {
+      return index;
+    }
+    int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+    long lowest = (long) (SUB_BUCKETS + (index - LINEAR_BUCKETS) % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) / 2;
+  }
+}
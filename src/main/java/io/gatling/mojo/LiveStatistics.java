@@ -0,0 +1,171 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics of the requests of the running simulations, per request and for all requests, updated while the
+ * simulation.log files are written. Memory doesn't grow with the number of requests: requests beyond
+ * {@value #MAX_KEYS} distinct names are counted together under {@value #OTHERS}.
+ */
+final class LiveStatistics {
+
+  static final int MAX_KEYS = 500;
+  static final String OTHERS = "Others";
+
+  private final Map<String, RequestStats> requests = new LinkedHashMap<>();
+  private final RequestStats total = new RequestStats();
+
+  private final SlidingWindow window;
+  private final long windowGraceMillis;
+  // first request start of each run, for the grace period of the window
+  private final Map<File, Long> runStarts = new HashMap<>();
+
+  private Map<String, RequestStats> intervalRequests = new LinkedHashMap<>();
+  private RequestStats intervalTotal = new RequestStats();
+  private long intervalStart = System.currentTimeMillis();
+
+  LiveStatistics() {
+    this(0, 0);
+  }
+
+  /**
+   * @param windowSeconds length of the sliding window of the {@link #window()} statistics, 0 for none
+   * @param windowGraceMillis time after the first request of a run during which its requests don't enter the
+   *                          window, such as the warm up of each simulation
+   */
+  LiveStatistics(int windowSeconds, long windowGraceMillis) {
+    this.window = windowSeconds > 0 ? new SlidingWindow(windowSeconds) : null;
+    this.windowGraceMillis = windowGraceMillis;
+  }
+
+  /**
+   * @param run the simulation.log of the request
+   */
+  synchronized void record(File run, SimulationLogParser.Request request) {
+    total.record(request);
+    if (window != null && isPastGrace(run, request)) {
+      window.record(request);
+    }
+    String key = statsKey(request.getKey());
+    statsOf(requests, key).record(request);
+    intervalTotal.record(request);
+    statsOf(intervalRequests, key).record(request);
+  }
+
+  private boolean isPastGrace(File run, SimulationLogParser.Request request) {
+    Long runStart = runStarts.get(run);
+    if (runStart == null || request.getStart() < runStart) {
+      runStart = request.getStart();
+      runStarts.put(run, runStart);
+    }
+    return request.getEnd() - runStart >= windowGraceMillis;
+  }
+
+  private String statsKey(String key) {
+    return requests.containsKey(key) || requests.size() < MAX_KEYS ? key : OTHERS;
+  }
+
+  private static RequestStats statsOf(Map<String, RequestStats> statsByKey, String key) {
+    RequestStats stats = statsByKey.get(key);
+    if (stats == null) {
+      stats = new RequestStats();
+      statsByKey.put(key, stats);
+    }
+    return stats;
+  }
+
+  /**
+   * @return the statistics of the requests recorded since the previous call, which start a new interval
+   */
+  synchronized Interval drainInterval() {
+    long now = System.currentTimeMillis();
+    Interval interval = new Interval(now - intervalStart, intervalTotal, intervalRequests);
+    intervalStart = now;
+    intervalTotal = new RequestStats();
+    intervalRequests = new LinkedHashMap<>();
+    return interval;
+  }
+
+  /**
+   * @return the statistics of the requests of the sliding window, without the requests of the grace period of
+   * their run, empty when there is no window
+   */
+  synchronized RequestStats window() {
+    return window != null ? window.aggregate() : new RequestStats();
+  }
+
+  int windowSeconds() {
+    return window != null ? window.getSeconds() : 0;
+  }
+
+  /**
+   * @return a copy of the statistics of all requests
+   */
+  synchronized RequestStats total() {
+    return total.copy();
+  }
+
+  /**
+   * @return a copy of the statistics per request, in the order the requests were first seen
+   */
+  synchronized Map<String, RequestStats> requests() {
+    Map<String, RequestStats> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, RequestStats> entry : requests.entrySet()) {
+      copy.put(entry.getKey(), entry.getValue().copy());
+    }
+    return copy;
+  }
+
+  /**
+   * Statistics of the requests recorded during an interval.
+   */
+  static final class Interval {
+
+    private final long durationMillis;
+    private final RequestStats total;
+    private final Map<String, RequestStats> requests;
+
+    private Interval(long durationMillis, RequestStats total, Map<String, RequestStats> requests) {
+      this.durationMillis = durationMillis;
+      this.total = total;
+      this.requests = requests;
+    }
+
+    long getDurationMillis() {
+      return durationMillis;
+    }
+
+    RequestStats getTotal() {
+      return total;
+    }
+
+    Map<String, RequestStats> getRequests() {
+      return requests;
+    }
+
+    /**
+     * @return the number of requests per second of the given statistics during the interval
+     */
+    double requestsPerSecond(RequestStats stats) {
+      return stats.getCount() * 1000.0 / Math.max(1, durationMillis);
+    }
+  }
+}
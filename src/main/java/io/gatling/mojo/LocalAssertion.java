@@ -0,0 +1,190 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A requirement on the results of a simulation, checked by the plugin, such as {@code p95(Login) < 800}.
+ * <p>
+ * The metric is one of {@code pNN} (percentile of the response times in ms, such as p99.9), {@code mean},
+ * {@code min}, {@code max}, {@code errorRate} (percentage of KO requests), {@code throughput} (requests per second)
+ * and {@code count}. The target is the name of a request, with or without its groups, the name of a group for all
+ * its requests, or {@code *} for all requests. The operator is one of {@code <}, {@code <=}, {@code >}, {@code >=}
+ * and {@code =}.
+ */
+final class LocalAssertion {
+
+  static final String ALL = "*";
+
+  private static final Pattern SYNTAX = Pattern.compile("\\s*(\\w+(?:\\.\\d+)?)\\s*\\((.+)\\)\\s*(<=|>=|<|>|=)\\s*(-?\\d+(?:\\.\\d+)?)\\s*");
+  private static final Pattern PERCENTILE = Pattern.compile("p(\\d+(?:\\.\\d+)?)");
+
+  private final String expression;
+  private final String metric;
+  private final String target;
+  private final String operator;
+  private final double threshold;
+
+  private LocalAssertion(String expression, String metric, String target, String operator, double threshold) {
+    this.expression = expression;
+    this.metric = metric;
+    this.target = target;
+    this.operator = operator;
+    this.threshold = threshold;
+  }
+
+  /**
+   * @throws IllegalArgumentException when the expression is invalid
+   */
+  static LocalAssertion parse(String expression) {
+    Matcher matcher = SYNTAX.matcher(expression);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Invalid assertion '" + expression + "', expected for instance 'p95(Login) < 800'");
+    }
+    String metric = matcher.group(1);
+    if (!isMetric(metric)) {
+      throw new IllegalArgumentException("Unknown metric '" + metric + "' in assertion '" + expression + "'");
+    }
+    return new LocalAssertion(expression.trim(), metric, matcher.group(2).trim(), matcher.group(3), Double.parseDouble(matcher.group(4)));
+  }
+
+  private static boolean isMetric(String metric) {
+    Matcher percentile = PERCENTILE.matcher(metric);
+    if (percentile.matches()) {
+      return Double.parseDouble(percentile.group(1)) <= 100;
+    }
+    return Arrays.asList("mean", "min", "max", "errorRate", "throughput", "count").contains(metric);
+  }
+
+  /**
+   * @return the outcome of the assertion on the given results
+   */
+  Outcome evaluate(SimulationLogAnalyzer.Result result) {
+    RequestStats stats = targetStats(result);
+    if (stats == null) {
+      return new Outcome(false, expression + ": no request matches '" + target + "'");
+    }
+    double actual = value(stats);
+    boolean ok;
+    switch (operator) {
+      case "<":
+        ok = actual < threshold;
+        break;
+      case "<=":
+        ok = actual <= threshold;
+        break;
+      case ">":
+        ok = actual > threshold;
+        break;
+      case ">=":
+        ok = actual >= threshold;
+        break;
+      default:
+        ok = actual == threshold;
+    }
+    return new Outcome(ok, String.format(Locale.ROOT, "%s: actual %s", expression, format(actual)));
+  }
+
+  private RequestStats targetStats(SimulationLogAnalyzer.Result result) {
+    if (ALL.equals(target)) {
+      return result.getTotal();
+    }
+    RequestStats stats = null;
+    for (Map.Entry<String, RequestStats> request : result.getRequests().entrySet()) {
+      if (matches(request.getKey())) {
+        if (stats == null) {
+          stats = new RequestStats();
+        }
+        stats.merge(request.getValue());
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * @param key groups and name of a request, as in {@link SimulationLogParser.Request#getKey()}
+   */
+  private boolean matches(String key) {
+    if (key.equals(target)) {
+      return true;
+    }
+    int separator = key.lastIndexOf(" / ");
+    if (separator < 0) {
+      return false;
+    }
+    return key.substring(separator + 3).equals(target)
+            || Arrays.asList(key.substring(0, separator).split(",")).contains(target);
+  }
+
+  private double value(RequestStats stats) {
+    LatencyHistogram responseTimes = stats.getResponseTimes();
+    switch (metric) {
+      case "mean":
+        return responseTimes.getMean();
+      case "min":
+        return responseTimes.getMin();
+      case "max":
+        return responseTimes.getMax();
+      case "errorRate":
+        return stats.getErrorPercentage();
+      case "throughput":
+        return stats.getThroughput();
+      case "count":
+        return stats.getCount();
+      default:
+        return responseTimes.percentile(Double.parseDouble(metric.substring(1)));
+    }
+  }
+
+  /**
+   * @return the value without decimals when it's whole, with 2 decimals otherwise, whatever the default locale
+   */
+  static String format(double value) {
+    return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.2f", value);
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+
+  /**
+   * Result of an assertion.
+   */
+  static final class Outcome {
+
+    private final boolean ok;
+    private final String message;
+
+    Outcome(boolean ok, String message) {
+      this.ok = ok;
+      this.message = message;
+    }
+
+    boolean isOk() {
+      return ok;
+    }
+
+    String getMessage() {
+      return message;
+    }
+  }
+}
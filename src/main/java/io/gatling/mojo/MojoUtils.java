@@ -16,14 +16,27 @@
 package io.gatling.mojo;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
+import java.net.ServerSocket;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -33,17 +46,74 @@ import java.util.regex.Pattern;
 
 import org.codehaus.plexus.util.StringUtils;
 
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
 public final class MojoUtils {
 
   public static boolean IS_WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
 
+  private static final String BOOTER_JAR_PREFIX = "gatlingbooter-";
+  private static final String BOOTER_JAR_SUFFIX = ".jar";
+  private static final int BOOTER_JAR_MAX_AGE_DAYS = 7;
+  private static final Map<String, Integer> JAVA_MAJOR_VERSIONS = new ConcurrentHashMap<>();
+
   private MojoUtils() {
   }
 
+  /**
+   * @return a port that was free on the loopback interface, it may be taken again by the time it is used
+   */
+  static int freeLocalPort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      return socket.getLocalPort();
+    }
+  }
+
   public static String toMultiPath(List<String> paths) {
     return StringUtils.join(paths.iterator(), File.pathSeparator);
   }
 
+  /**
+   * Major version of the JVM of a java executable, read from the release file of its Java home so no JVM
+   * needs to be started.
+   *
+   * @param javaExecutable path of the java executable
+   * @return the major version, 8 when it can't be determined
+   */
+  public static int javaMajorVersion(String javaExecutable) {
+    Integer version = JAVA_MAJOR_VERSIONS.get(javaExecutable);
+    if (version == null) {
+      version = readJavaMajorVersion(new File(javaExecutable).getAbsoluteFile().getParentFile().getParentFile());
+      JAVA_MAJOR_VERSIONS.put(javaExecutable, version);
+    }
+    return version;
+  }
+
+  private static int readJavaMajorVersion(File javaHome) {
+    // Java 8 executables can also live in the jre folder of the JDK
+    for (File release : new File[]{new File(javaHome, "release"), new File(javaHome.getParentFile(), "release")}) {
+      if (release.isFile()) {
+        try (InputStream in = new FileInputStream(release)) {
+          Properties properties = new Properties();
+          properties.load(in);
+          String javaVersion = properties.getProperty("JAVA_VERSION");
+          if (javaVersion != null) {
+            return parseJavaMajorVersion(javaVersion.replace("\"", ""));
+          }
+        } catch (IOException | NumberFormatException e) {
+          // fall back to the oldest supported version
+        }
+      }
+    }
+    return 8;
+  }
+
+  static int parseJavaMajorVersion(String javaVersion) {
+    String[] parts = javaVersion.split("[._\\-+]");
+    int major = Integer.parseInt(parts[0]);
+    return major == 1 ? Integer.parseInt(parts[1]) : major;
+  }
+
   public static String locateJar(Class<?> c) throws Exception {
     final URL location;
     final String classLocation = c.getName().replace('.', '/') + ".class";
@@ -64,6 +134,57 @@ public final class MojoUtils {
     throw new ClassNotFoundException("Cannot find class '" + c.getName() + " using the classloader");
   }
 
+  /**
+   * SHA-1 of the given values, in order.
+   *
+   * @param values the values to hash
+   * @return the hex encoded digest
+   */
+  public static String sha1Hex(Iterable<String> values) {
+    MessageDigest digest = sha1();
+    for (String value : values) {
+      digest.update(value.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * SHA-1 of the content of a file.
+   *
+   * @param file the file to hash
+   * @return the hex encoded digest
+   * @throws IOException When the file can't be read.
+   */
+  public static String sha1Hex(File file) throws IOException {
+    MessageDigest digest = sha1();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM has to support SHA-1
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
   public static <T> List<T> arrayAsListEmptyIfNull(T[] array) {
     return array == null ? Collections.<T> emptyList() : Arrays.asList(array);
   }
@@ -72,43 +193,75 @@ public final class MojoUtils {
   /**
    * Create a jar with just a manifest containing a Main-Class entry for BooterConfiguration and a Class-Path entry
    * for all classpath elements.
+   * <p>
+   * Jars are cached in the given folder, named after a hash of the classpath and the main class, so forks
+   * with the same classpath share the same jar, also across builds. Jars that weren't used for
+   * {@value #BOOTER_JAR_MAX_AGE_DAYS} days are deleted when a new one is created.
    *
    * @param classPath List of all classpath elements.
    * @param startClassName The classname to start (main-class)
+   * @param cacheFolder The folder to keep the jars in
    * @return The file pointing to the jar
    * @throws java.io.IOException When a file operation fails.
    */
-  public static File createBooterJar(List<String> classPath, String startClassName) throws IOException {
-    File file = File.createTempFile("gatlingbooter", ".jar");
-    file.deleteOnExit();
+  public static File createBooterJar(List<String> classPath, String startClassName, File cacheFolder) throws IOException {
+    List<String> key = new ArrayList<>();
+    key.add(startClassName);
+    for (String el : classPath) {
+      // directories end with a '/' in the manifest, only when they exist
+      key.add(el + (new File(el).isDirectory() ? "/" : ""));
+    }
+    File file = new File(cacheFolder, BOOTER_JAR_PREFIX + sha1Hex(key) + BOOTER_JAR_SUFFIX);
+    if (file.isFile()) {
+      // marks it as used
+      file.setLastModified(System.currentTimeMillis());
+      return file;
+    }
 
-    FileOutputStream fos = new FileOutputStream(file);
-    JarOutputStream jos = new JarOutputStream(fos);
-    jos.setLevel(JarOutputStream.STORED);
-    JarEntry je = new JarEntry("META-INF/MANIFEST.MF");
-    jos.putNextEntry(je);
+    Files.createDirectories(cacheFolder.toPath());
+    deleteUnusedBooterJars(cacheFolder);
+    File tmp = File.createTempFile(BOOTER_JAR_PREFIX, ".tmp", cacheFolder);
 
-    Manifest man = new Manifest();
+    try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(tmp))) {
+      jos.setLevel(JarOutputStream.STORED);
+      JarEntry je = new JarEntry("META-INF/MANIFEST.MF");
+      jos.putNextEntry(je);
 
-    // we can't use StringUtils.join here since we need to add a '/' to
-    // the end of directory entries - otherwise the jvm will ignore them.
-    StringBuilder cp = new StringBuilder();
-    for (String el : classPath) {
-      // NOTE: if File points to a directory, this entry MUST end in '/'.
-      cp.append(getURL(new File(el)).toExternalForm()).append(" ");
-    }
-    cp.setLength(cp.length() - 1);
+      Manifest man = new Manifest();
+
+      // we can't use StringUtils.join here since we need to add a '/' to
+      // the end of directory entries - otherwise the jvm will ignore them.
+      StringBuilder cp = new StringBuilder();
+      for (String el : classPath) {
+        // NOTE: if File points to a directory, this entry MUST end in '/'.
+        cp.append(getURL(new File(el)).toExternalForm()).append(" ");
+      }
+      cp.setLength(cp.length() - 1);
 
-    man.getMainAttributes().putValue(Attributes.Name.MANIFEST_VERSION.toString(), "1.0");
-    man.getMainAttributes().putValue(Attributes.Name.CLASS_PATH.toString(), cp.toString());
-    man.getMainAttributes().putValue(Attributes.Name.MAIN_CLASS.toString(), startClassName);
+      man.getMainAttributes().putValue(Attributes.Name.MANIFEST_VERSION.toString(), "1.0");
+      man.getMainAttributes().putValue(Attributes.Name.CLASS_PATH.toString(), cp.toString());
+      man.getMainAttributes().putValue(Attributes.Name.MAIN_CLASS.toString(), startClassName);
 
-    man.write(jos);
-    jos.close();
+      man.write(jos);
+    }
 
+    // concurrent forks may create the same jar, the content is identical
+    Files.move(tmp.toPath(), file.toPath(), REPLACE_EXISTING);
     return file;
   }
 
+  private static void deleteUnusedBooterJars(File cacheFolder) {
+    long expired = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(BOOTER_JAR_MAX_AGE_DAYS);
+    File[] jars = cacheFolder.listFiles((dir, name) -> name.startsWith(BOOTER_JAR_PREFIX));
+    if (jars != null) {
+      for (File jar : jars) {
+        if (jar.lastModified() < expired) {
+          jar.delete();
+        }
+      }
+    }
+  }
+
   public static URL getURL(File file) throws MalformedURLException {
 
     // encode any characters that do not comply with RFC 2396
@@ -7,8 +7,16 @@ import org.apache.maven.plugin.MojoExecutionException;
 
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.Integer.parseInt;
 
@@ -16,6 +24,13 @@ public class PerfanaClient {
 
     private Logger logger = new SystemOutLogger();
 
+    private static final long DEFAULT_ASSERTS_TIMEOUT_MILLIS = 120_000;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 15_000;
+    private static final int MAX_QUEUED_CALLS = 16;
+    private static final long ASYNC_CONNECT_TIMEOUT_SECONDS = 5;
+    private static final long ASYNC_READ_WRITE_TIMEOUT_SECONDS = 10;
+
     private static final MediaType JSON
             = MediaType.parse("application/json; charset=utf-8");
 
@@ -30,8 +45,11 @@ public class PerfanaClient {
     private final String perfanaUrl;
     private final String rampupTimeSeconds;
     private final String plannedDurationInSeconds;
-    private final String annotations;
+    private String annotations;
     private final Properties variables;
+    private LiveStatistics liveStatistics;
+    private InjectorTelemetry injectorTelemetry;
+    private AsyncSender asyncSender;
 
     public PerfanaClient(String application, String testType, String testEnvironment, String testRunId, String CIBuildResultsUrl, String applicationRelease, String rampupTimeInSeconds, String constantLoadTimeInSeconds, String perfanaUrl, String annotations, Properties variables) {
         this.application = application;
@@ -51,9 +69,71 @@ public class PerfanaClient {
         this.logger = logger;
     }
 
+    /**
+     * Send the live statistics of the running test with the keep alive calls.
+     * @param liveStatistics statistics of the running simulations
+     */
+    public void injectLiveStatistics(LiveStatistics liveStatistics) {
+        this.liveStatistics = liveStatistics;
+    }
+
+    /**
+     * Send the calls to Perfana in the background, one at a time, instead of waiting for each response.
+     * Keep alive calls still waiting to be sent are replaced by newer ones.
+     */
+    public void enableAsync() {
+        // own dispatcher, shut down on flush without affecting the blocking calls
+        OkHttpClient asyncClient = client.newBuilder()
+                .dispatcher(new Dispatcher())
+                .connectTimeout(ASYNC_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(ASYNC_READ_WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(ASYNC_READ_WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+        this.asyncSender = new AsyncSender(asyncClient);
+    }
+
+    /**
+     * Wait for the calls still to be sent in async mode, and drop the ones not sent in time.
+     * @param timeoutMillis maximum time to wait
+     */
+    public void flush(long timeoutMillis) {
+        if (asyncSender != null) {
+            asyncSender.flush(timeoutMillis);
+        }
+    }
+
+    /**
+     * Send the latest telemetry of the Gatling JVM with the keep alive calls.
+     * @param injectorTelemetry telemetry of the forked Gatling JVMs
+     */
+    public void injectInjectorTelemetry(InjectorTelemetry injectorTelemetry) {
+        this.injectorTelemetry = injectorTelemetry;
+    }
+
+    /**
+     * Add an annotation to the test run, sent with the next calls.
+     * @param annotation text of the annotation
+     */
+    public void addAnnotation(String annotation) {
+        this.annotations = annotations == null || annotations.isEmpty() ? annotation : annotations + "; " + annotation;
+    }
+
     public void callPerfana(Boolean completed) {
-        String json = perfanaJson(application, testType, testEnvironment, testRunId, CIBuildResultsUrl, applicationRelease, rampupTimeSeconds, plannedDurationInSeconds, annotations, variables, completed);
+        JSONObject liveMetrics = !completed && liveStatistics != null
+                ? liveMetricsJson(liveStatistics.drainInterval())
+                : null;
+        if (!completed && injectorTelemetry != null && injectorTelemetry.latest() != null) {
+            if (liveMetrics == null) {
+                liveMetrics = new JSONObject();
+            }
+            liveMetrics.put("injector", injectorJson(injectorTelemetry.latest()));
+        }
+        String json = perfanaJson(application, testType, testEnvironment, testRunId, CIBuildResultsUrl, applicationRelease, rampupTimeSeconds, plannedDurationInSeconds, annotations, variables, completed, liveMetrics);
         logger.debug(String.join(" ", "Call to endpoint:", perfanaUrl, "with json:", json));
+        if (asyncSender != null) {
+            asyncSender.send(perfanaUrl + "/test", json, !completed);
+            return;
+        }
         try {
             String result = post(perfanaUrl + "/test", json);
             logger.debug("Result: " + result);
@@ -63,18 +143,21 @@ public class PerfanaClient {
     }
 
     private String post(String url, String json) throws IOException {
+        try (Response response = client.newCall(postRequest(url, json)).execute()) {
+            ResponseBody responseBody = response.body();
+            return responseBody == null ? "null" : responseBody.string();
+        }
+    }
+
+    private static Request postRequest(String url, String json) {
         RequestBody body = RequestBody.create(JSON, json);
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(url)
                 .post(body)
                 .build();
-        try (Response response = client.newCall(request).execute()) {
-            ResponseBody responseBody = response.body();
-            return responseBody == null ? "null" : responseBody.string();
-        }
     }
 
-    private String perfanaJson(String application, String testType, String testEnvironment, String testRunId, String CIBuildResultsUrl, String applicationRelease, String rampupTimeSeconds, String plannedDurationInSeconds, String annotations, Properties variables, Boolean completed) {
+    private String perfanaJson(String application, String testType, String testEnvironment, String testRunId, String CIBuildResultsUrl, String applicationRelease, String rampupTimeSeconds, String plannedDurationInSeconds, String annotations, Properties variables, Boolean completed, JSONObject liveMetrics) {
 
         JSONObject perfanaJson = new JSONObject();
 
@@ -115,17 +198,80 @@ public class PerfanaClient {
         perfanaJson.put("duration", plannedDurationInSeconds);
         perfanaJson.put("completed", completed);
 
+        /* If live statistics are collected add the metrics since the previous call */
+
+        if (liveMetrics != null) {
+            perfanaJson.put("liveMetrics", liveMetrics);
+        }
+
         return perfanaJson.toJSONString();
 
 
     }
 
     /**
-     * Call asserts for this test run.
+     * Compact snapshot of the requests since the previous keep alive: throughput, errors and response time
+     * percentiles for all requests, and per request.
+     */
+    private JSONObject liveMetricsJson(LiveStatistics.Interval interval) {
+        JSONObject liveMetrics = metricsJson(interval, interval.getTotal());
+        liveMetrics.put("intervalSeconds", round(interval.getDurationMillis() / 1000.0));
+
+        JSONArray requestsJson = new JSONArray();
+        for (Map.Entry<String, RequestStats> request : interval.getRequests().entrySet()) {
+            JSONObject requestJson = metricsJson(interval, request.getValue());
+            requestJson.put("name", request.getKey());
+            requestsJson.add(requestJson);
+        }
+        liveMetrics.put("requests", requestsJson);
+        return liveMetrics;
+    }
+
+    private static JSONObject metricsJson(LiveStatistics.Interval interval, RequestStats stats) {
+        JSONObject metrics = new JSONObject();
+        metrics.put("count", stats.getCount());
+        metrics.put("requestsPerSecond", round(interval.requestsPerSecond(stats)));
+        metrics.put("errorPercentage", round(stats.getErrorPercentage()));
+        metrics.put("p50", stats.getResponseTimes().percentile(50));
+        metrics.put("p95", stats.getResponseTimes().percentile(95));
+        metrics.put("p99", stats.getResponseTimes().percentile(99));
+        return metrics;
+    }
+
+    private static JSONObject injectorJson(InjectorTelemetry.Sample sample) {
+        JSONObject injector = new JSONObject();
+        injector.put("timestamp", sample.getTimestamp());
+        injector.put("heapUsedMB", sample.getHeapUsed() >> 20);
+        injector.put("heapMaxMB", sample.getHeapMax() >> 20);
+        injector.put("gcPercentage", round(sample.getGcPercentage()));
+        injector.put("processCpuPercentage", round(sample.getProcessCpuPercentage()));
+        injector.put("systemCpuPercentage", round(sample.getSystemCpuPercentage()));
+        injector.put("threads", sample.getThreads());
+        return injector;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * Call asserts for this test run, waiting at most {@value #DEFAULT_ASSERTS_TIMEOUT_MILLIS} ms for the results.
      * @return json string such as {"meetsRequirement":true,"benchmarkResultPreviousOK":true,"benchmarkResultFixedOK":true}
      * @throws IOException when call fails
      */
     public String callCheckAsserts() throws IOException, MojoExecutionException {
+        return callCheckAsserts(DEFAULT_ASSERTS_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Call asserts for this test run. Polls until the results are available, first after short intervals
+     * growing exponentially, or as told by the Retry-After header. Fails right away on a status that won't
+     * change by retrying.
+     * @param timeoutMillis maximum time to wait for the results
+     * @return json string such as {"meetsRequirement":true,"benchmarkResultPreviousOK":true,"benchmarkResultFixedOK":true}
+     * @throws IOException when call fails
+     */
+    public String callCheckAsserts(long timeoutMillis) throws IOException, MojoExecutionException {
         // example: https://targets-io.com/benchmarks/DASHBOARD/NIGHTLY/TEST-RUN-831
         String url = String.join("/", perfanaUrl, "get-benchmark-results", URLEncoder.encode(application, "UTF-8").replaceAll("\\+", "%20"), URLEncoder.encode(testRunId, "UTF-8").replaceAll("\\+", "%20") );
         Request request = new Request.Builder()
@@ -133,37 +279,174 @@ public class PerfanaClient {
                 .get()
                 .build();
 
-        int retries = 0;
-        final int MAX_RETRIES = 12;
-        final long sleepInMillis = 10000;
-        String assertions = null;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+        int attempt = 0;
+        IOException lastFailure = null;
 
-        while (retries <= MAX_RETRIES) {
+        while (true) {
+            attempt++;
+            long retryAfterMillis = -1;
             try (Response response = client.newCall(request).execute()) {
 
                 ResponseBody responseBody = response.body();
                 if (response.code() == 200) {
-                    assertions = responseBody == null ? "null" : responseBody.string();
-                    break;
+                    return responseBody == null ? "null" : responseBody.string();
+                }
+                String message = responseBody == null ? response.message() : responseBody.string();
+                if (!isRetryable(response.code())) {
+                    throw new MojoExecutionException("Unable to retrieve assertions for url [" + url + "] code [" + response.code() + "] " + message);
+                }
+                retryAfterMillis = retryAfterMillis(response.header("Retry-After"));
+                logger.warn("failed to retrieve assertions for url [" + url + "] code [" + response.code() + "] attempt [" + attempt + "] " + message);
+            } catch (IOException e) {
+                lastFailure = e;
+                logger.warn("failed to retrieve assertions for url [" + url + "] attempt [" + attempt + "] " + e.getMessage());
+            }
+
+            long remainingMillis = deadline - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                throw new MojoExecutionException("Unable to retrieve assertions for url [" + url + "] within " + timeoutMillis + " ms", lastFailure);
+            }
+            long sleepMillis = retryAfterMillis >= 0 ? retryAfterMillis : withJitter(backoffMillis);
+            try {
+                Thread.sleep(Math.min(sleepMillis, remainingMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while retrieving assertions for url [" + url + "]", e);
+            }
+            backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    /**
+     * Not found is retried as the results of the test run may not be available yet.
+     */
+    private static boolean isRetryable(int code) {
+        return code == 404 || code == 408 || code == 425 || code == 429 || code >= 500;
+    }
+
+    /**
+     * @return the delay of a Retry-After header in seconds or as HTTP date, -1 when missing or invalid
+     */
+    private static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                long date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Math.max(0, date - System.currentTimeMillis());
+            } catch (DateTimeParseException e2) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Between half and all of the backoff, so builds polling at the same time spread their calls.
+     */
+    private static long withJitter(long backoffMillis) {
+        return backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+    }
+
+    /**
+     * Sends the calls of the async mode in order, at most one at a time, from a bounded queue.
+     */
+    private final class AsyncSender implements Callback {
+
+        private final OkHttpClient asyncClient;
+        private final Deque<AsyncCall> queue = new ArrayDeque<>();
+        private boolean sending;
+
+        private AsyncSender(OkHttpClient asyncClient) {
+            this.asyncClient = asyncClient;
+        }
+
+        synchronized void send(String url, String json, boolean keepAlive) {
+            if (keepAlive) {
+                // a newer keep alive makes the pending one stale
+                queue.removeIf(call -> call.keepAlive);
+            }
+            if (queue.size() >= MAX_QUEUED_CALLS) {
+                queue.pollFirst();
+                logger.warn("Too many Perfana calls waiting to be sent, dropping the oldest one.");
+            }
+            queue.addLast(new AsyncCall(url, json, keepAlive));
+            sendNext();
+        }
+
+        private void sendNext() {
+            if (sending || queue.isEmpty()) {
+                return;
+            }
+            AsyncCall call = queue.pollFirst();
+            sending = true;
+            asyncClient.newCall(postRequest(call.url, call.json)).enqueue(this);
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            logger.error("Failed to call perfana: " + e.getMessage());
+            sent();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            try (Response closeable = response) {
+                ResponseBody responseBody = closeable.body();
+                String result = responseBody == null ? "null" : responseBody.string();
+                if (closeable.isSuccessful()) {
+                    logger.debug("Result: " + result);
                 } else {
-                    String message = responseBody == null ? response.message() : responseBody.string();
-                    logger.warn("failed to retrieve assertions for url [" + url + "] code [" + response.code() + "] retry [" + retries + "/" + MAX_RETRIES + "] " + message);
+                    logger.warn("Perfana call failed with code [" + closeable.code() + "] " + result);
                 }
+            } finally {
+                sent();
+            }
+        }
+
+        private synchronized void sent() {
+            sending = false;
+            sendNext();
+            notifyAll();
+        }
+
+        synchronized void flush(long timeoutMillis) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining = timeoutMillis;
+            while ((sending || !queue.isEmpty()) && remaining > 0) {
                 try {
-                    Thread.sleep(sleepInMillis);
+                    wait(remaining);
                 } catch (InterruptedException e) {
-                    // ignore
+                    Thread.currentThread().interrupt();
+                    break;
                 }
-                retries = retries + 1;
+                remaining = deadline - System.currentTimeMillis();
             }
-            if (retries == MAX_RETRIES) {
-                throw new MojoExecutionException("Unable to retrieve assertions for url [" + url + "]");
+            if (sending || !queue.isEmpty()) {
+                logger.warn("Perfana calls not sent within " + timeoutMillis + " ms, dropping " + (queue.size() + (sending ? 1 : 0)) + " call(s).");
+                queue.clear();
+                asyncClient.dispatcher().cancelAll();
             }
+            asyncClient.dispatcher().executorService().shutdown();
         }
-        return assertions;
     }
 
+    private static final class AsyncCall {
 
+        private final String url;
+        private final String json;
+        private final boolean keepAlive;
+
+        private AsyncCall(String url, String json, boolean keepAlive) {
+            this.url = url;
+            this.json = json;
+            this.keepAlive = keepAlive;
+        }
+    }
 
     public static class KeepAliveRunner implements Runnable {
 
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares the results of a run with the results of a reference run from the {@link RunHistory}, such as a
+ * baseline or the previous run, request by request.
+ * <p>
+ * A percentile regresses when it is worse than the reference by more than the tolerance and the difference is
+ * significant: the Welch statistic of the per second values of the percentile, in both runs, is above the
+ * threshold. Throughput regresses the same way, with the per second request counts. The tolerance ignores
+ * differences too small to matter and the statistic ignores differences within the noise of the runs.
+ */
+final class RegressionCheck {
+
+  private static final int[] PERCENTILES = {95, 99};
+  private static final int[] PERCENTILE_COLUMNS = {RunHistory.P95, RunHistory.P99};
+  // seconds with requests needed in both runs to tell a difference from noise
+  private static final int MIN_SECONDS = 5;
+
+  private final double tolerancePercentage;
+  private final double threshold;
+
+  /**
+   * @param tolerancePercentage difference with the reference, in percents, below which there's no regression
+   * @param threshold Welch statistic above which a difference is significant, such as 3
+   */
+  RegressionCheck(double tolerancePercentage, double threshold) {
+    this.tolerancePercentage = tolerancePercentage;
+    this.threshold = threshold;
+  }
+
+  /**
+   * @param referenceName name of the reference in the messages, such as {@literal baseline run-123}
+   * @return an outcome per request and metric, for the requests of both runs
+   */
+  List<LocalAssertion.Outcome> compare(RunHistory.Run current, RunHistory.Run reference, String referenceName) {
+    List<LocalAssertion.Outcome> outcomes = new ArrayList<>();
+    for (Map.Entry<String, RunHistory.Series> request : current.getRequests().entrySet()) {
+      RunHistory.Series referenceSeries = reference.getRequests().get(request.getKey());
+      RunHistory.Series series = request.getValue();
+      if (referenceSeries == null || series.getStats().getCount() == 0 || referenceSeries.getStats().getCount() == 0) {
+        continue;
+      }
+      for (int i = 0; i < PERCENTILES.length; i++) {
+        int column = PERCENTILE_COLUMNS[i];
+        outcomes.add(outcome("p" + PERCENTILES[i] + "(" + request.getKey() + ")",
+                series.getStats().getResponseTimes().percentile(PERCENTILES[i]),
+                referenceSeries.getStats().getResponseTimes().percentile(PERCENTILES[i]),
+                activeSeconds(series, column), activeSeconds(referenceSeries, column), true, referenceName));
+      }
+      outcomes.add(outcome("throughput(" + request.getKey() + ")",
+              series.getStats().getThroughput(), referenceSeries.getStats().getThroughput(),
+              series.column(RunHistory.COUNT), referenceSeries.column(RunHistory.COUNT), false, referenceName));
+    }
+    return outcomes;
+  }
+
+  /**
+   * @param higherIsWorse true for response times, false for throughput
+   */
+  private LocalAssertion.Outcome outcome(String metric, double actual, double expected, int[] actualSeconds,
+                                         int[] expectedSeconds, boolean higherIsWorse, String referenceName) {
+    double change = expected == 0 ? 0 : (actual - expected) * 100 / expected;
+    double worsening = higherIsWorse ? change : -change;
+    String message = String.format(Locale.ROOT, "%s: %s vs %s in %s (%+.1f%%", metric, LocalAssertion.format(actual),
+            LocalAssertion.format(expected), referenceName, change);
+    if (worsening <= tolerancePercentage) {
+      return new LocalAssertion.Outcome(true, message + ")");
+    }
+    if (actualSeconds.length < MIN_SECONDS || expectedSeconds.length < MIN_SECONDS) {
+      return new LocalAssertion.Outcome(true, message + ", too few seconds to be significant)");
+    }
+    double statistic = welch(actualSeconds, expectedSeconds);
+    double significance = higherIsWorse ? statistic : -statistic;
+    return new LocalAssertion.Outcome(significance <= threshold,
+            message + String.format(Locale.ROOT, ", Welch %.1f)", statistic));
+  }
+
+  /**
+   * @return the values of the seconds with requests
+   */
+  private static int[] activeSeconds(RunHistory.Series series, int column) {
+    int[] counts = series.column(RunHistory.COUNT);
+    int[] values = series.column(column);
+    int active = 0;
+    for (int count : counts) {
+      if (count > 0) {
+        active++;
+      }
+    }
+    int[] activeValues = new int[active];
+    for (int i = 0, j = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        activeValues[j++] = values[i];
+      }
+    }
+    return activeValues;
+  }
+
+  /**
+   * @return the Welch statistic of the difference of the means of the samples, positive when the first is higher
+   */
+  static double welch(int[] a, int[] b) {
+    double meanA = mean(a);
+    double meanB = mean(b);
+    double standardError = Math.sqrt(variance(a, meanA) / a.length + variance(b, meanB) / b.length);
+    if (standardError == 0) {
+      return meanA == meanB ? 0 : Math.copySign(Double.POSITIVE_INFINITY, meanA - meanB);
+    }
+    return (meanA - meanB) / standardError;
+  }
+
+  private static double mean(int[] values) {
+    double sum = 0;
+    for (int value : values) {
+      sum += value;
+    }
+    return sum / values.length;
+  }
+
+  private static double variance(int[] values, double mean) {
+    double sum = 0;
+    for (int value : values) {
+      sum += (value - mean) * (value - mean);
+    }
+    return sum / (values.length - 1);
+  }
+}
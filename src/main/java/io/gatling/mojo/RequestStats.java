@@ -0,0 +1,110 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+/**
+ * Counts, errors and response times of a request, or of all requests. Not thread safe.
+ */
+final class RequestStats {
+
+  private final LatencyHistogram responseTimes = new LatencyHistogram();
+  private long koCount;
+  private long firstStart = Long.MAX_VALUE;
+  private long lastEnd;
+
+  void record(SimulationLogParser.Request request) {
+    responseTimes.record(request.getResponseTime());
+    if (!request.isOk()) {
+      koCount++;
+    }
+    firstStart = Math.min(firstStart, request.getStart());
+    lastEnd = Math.max(lastEnd, request.getEnd());
+  }
+
+  void merge(RequestStats other) {
+    responseTimes.merge(other.responseTimes);
+    koCount += other.koCount;
+    firstStart = Math.min(firstStart, other.firstStart);
+    lastEnd = Math.max(lastEnd, other.lastEnd);
+  }
+
+  /**
+   * Restores stored statistics.
+   */
+  static RequestStats of(LatencyHistogram responseTimes, long koCount, long firstStart, long lastEnd) {
+    RequestStats stats = new RequestStats();
+    stats.responseTimes.merge(responseTimes);
+    stats.koCount = koCount;
+    stats.firstStart = responseTimes.getCount() == 0 ? Long.MAX_VALUE : firstStart;
+    stats.lastEnd = lastEnd;
+    return stats;
+  }
+
+  RequestStats copy() {
+    RequestStats copy = new RequestStats();
+    copy.merge(this);
+    return copy;
+  }
+
+  long getCount() {
+    return responseTimes.getCount();
+  }
+
+  long getKoCount() {
+    return koCount;
+  }
+
+  /**
+   * @return the percentage of failed requests, 0 when there were none
+   */
+  double getErrorPercentage() {
+    long count = getCount();
+    return count == 0 ? 0 : 100.0 * koCount / count;
+  }
+
+  LatencyHistogram getResponseTimes() {
+    return responseTimes;
+  }
+
+  /**
+   * @return start of the first request in epoch millis, 0 when there were none
+   */
+  long getFirstStart() {
+    return getCount() == 0 ? 0 : firstStart;
+  }
+
+  /**
+   * @return end of the last request in epoch millis, 0 when there were none
+   */
+  long getLastEnd() {
+    return lastEnd;
+  }
+
+  /**
+   * @return requests per second between the first start and the last end
+   */
+  double getThroughput() {
+    long duration = getLastEnd() - getFirstStart();
+    return getCount() == 0 ? 0 : getCount() * 1000.0 / Math.max(1000, duration);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d requests, %.2f%% KO, p50 %d ms, p95 %d ms, p99 %d ms, max %d ms",
+            getCount(), getErrorPercentage(), responseTimes.percentile(50), responseTimes.percentile(95),
+            responseTimes.percentile(99), responseTimes.getMax());
+  }
+}
@@ -0,0 +1,448 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local store of the results of past runs, to compare runs without parsing their simulation.log again.
+ * <p>
+ * Each run is stored in a compact columnar file: per request, and for all requests, its statistics with the
+ * histogram of its response times, then one column per metric with a value per second of the run, by request end
+ * time. An index lists the runs by application, test type, test environment and test run id.
+ */
+final class RunHistory {
+
+  static final String INDEX_FILE = "index.tsv";
+
+  /**
+   * Per second metrics stored for each request.
+   */
+  static final int COUNT = 0;
+  static final int KO_COUNT = 1;
+  static final int P50 = 2;
+  static final int P95 = 3;
+  static final int P99 = 4;
+  static final int MAX = 5;
+  private static final int COLUMNS = 6;
+
+  private static final int MAGIC = 0x47484953;
+  private static final int VERSION = 1;
+  private static final String RUNS_FOLDER = "runs";
+  // seconds a request may complete out of order in the log before its second is closed
+  private static final long OPEN_SECONDS = 60;
+
+  private final File folder;
+
+  RunHistory(File folder) {
+    this.folder = folder;
+  }
+
+  /**
+   * Stores the results of a run and adds it to the index.
+   *
+   * @param runFolder folder of the run, with its simulation.log
+   * @return the entry of the run in the index
+   */
+  Entry record(String application, String testType, String testEnvironment, String testRunId, File runFolder) throws IOException {
+    File runs = new File(folder, RUNS_FOLDER);
+    Files.createDirectories(runs.toPath());
+    String fileName = runFolder.getName() + ".hist";
+    String simulation = write(new File(runFolder, SimulationLogTailer.SIMULATION_LOG), new File(runs, fileName));
+
+    Entry entry = new Entry(application, testType, testEnvironment, testRunId, simulation, runFolder.getName(), System.currentTimeMillis(), fileName);
+    Files.write(new File(folder, INDEX_FILE).toPath(), Collections.singletonList(entry.toLine()), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    return entry;
+  }
+
+  /**
+   * @return the runs of the index, oldest first
+   */
+  List<Entry> entries() throws IOException {
+    File index = new File(folder, INDEX_FILE);
+    List<Entry> entries = new ArrayList<>();
+    if (!index.isFile()) {
+      return entries;
+    }
+    for (String line : Files.readAllLines(index.toPath(), StandardCharsets.UTF_8)) {
+      Entry entry = Entry.parse(line);
+      if (entry != null) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * @return the runs of the given test run, oldest first
+   */
+  List<Entry> find(String application, String testType, String testEnvironment, String testRunId) throws IOException {
+    List<Entry> found = new ArrayList<>();
+    for (Entry entry : entries()) {
+      if (entry.isOf(application, testType, testEnvironment) && entry.testRunId.equals(testRunId)) {
+        found.add(entry);
+      }
+    }
+    return found;
+  }
+
+  Run load(Entry entry) throws IOException {
+    return read(new File(new File(folder, RUNS_FOLDER), entry.fileName));
+  }
+
+  /**
+   * Reads the simulation.log once and writes its statistics and per second metrics.
+   *
+   * @return the simulation of the run, empty when unknown
+   */
+  static String write(File simulationLog, File target) throws IOException {
+    Map<String, SeriesBuilder> requests = new LinkedHashMap<>();
+    SeriesBuilder total = new SeriesBuilder();
+    requests.put(LocalAssertion.ALL, total);
+    String simulation = "";
+    long latestSecond = Long.MIN_VALUE;
+
+    try (BufferedReader reader = Files.newBufferedReader(simulationLog.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (simulation.isEmpty() && line.startsWith(SimulationLogParser.RUN + "\t")) {
+          String[] fields = line.split("\t");
+          simulation = fields.length > 1 ? fields[1] : "";
+          continue;
+        }
+        SimulationLogParser.Request request = SimulationLogParser.parse(line);
+        if (request == null) {
+          continue;
+        }
+        total.record(request);
+        requests.computeIfAbsent(request.getKey(), key -> new SeriesBuilder()).record(request);
+        long second = request.getEnd() / 1000;
+        if (second > latestSecond) {
+          latestSecond = second;
+          for (SeriesBuilder series : requests.values()) {
+            series.close(latestSecond - OPEN_SECONDS);
+          }
+        }
+      }
+    }
+
+    long firstSecond = Long.MAX_VALUE;
+    long lastSecond = Long.MIN_VALUE;
+    for (SeriesBuilder series : requests.values()) {
+      series.close(Long.MAX_VALUE);
+      if (!series.closedSeconds.isEmpty()) {
+        firstSecond = Math.min(firstSecond, series.closedSeconds.firstKey());
+        lastSecond = Math.max(lastSecond, series.closedSeconds.lastKey());
+      }
+    }
+    int seconds = firstSecond > lastSecond ? 0 : (int) (lastSecond - firstSecond + 1);
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+            Files.newOutputStream(target.toPath()), 64 * 1024)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(simulation);
+      out.writeLong(seconds == 0 ? 0 : firstSecond);
+      out.writeInt(seconds);
+      out.writeInt(requests.size());
+      for (Map.Entry<String, SeriesBuilder> request : requests.entrySet()) {
+        out.writeUTF(request.getKey());
+        writeStats(out, request.getValue().stats);
+        for (int column = 0; column < COLUMNS; column++) {
+          int[] values = request.getValue().column(column, firstSecond, seconds);
+          for (int value : values) {
+            out.writeInt(value);
+          }
+        }
+      }
+    }
+    return simulation;
+  }
+
+  private static void writeStats(DataOutputStream out, RequestStats stats) throws IOException {
+    LatencyHistogram responseTimes = stats.getResponseTimes();
+    out.writeLong(stats.getKoCount());
+    out.writeLong(stats.getFirstStart());
+    out.writeLong(stats.getLastEnd());
+    out.writeLong(responseTimes.getSum());
+    out.writeLong(responseTimes.getMin());
+    out.writeLong(responseTimes.getMax());
+    long[] counts = responseTimes.getCounts();
+    int buckets = 0;
+    for (long count : counts) {
+      if (count > 0) {
+        buckets++;
+      }
+    }
+    out.writeShort(buckets);
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        out.writeShort(i);
+        out.writeLong(counts[i]);
+      }
+    }
+  }
+
+  static Run read(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+            Files.newInputStream(file.toPath()), 64 * 1024)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unsupported run history file " + file);
+      }
+      // the simulation and the first second, for other readers of the file
+      in.readUTF();
+      in.readLong();
+      int seconds = in.readInt();
+      int requestCount = in.readInt();
+      Map<String, Series> requests = new LinkedHashMap<>();
+      for (int r = 0; r < requestCount; r++) {
+        String key = in.readUTF();
+        RequestStats stats = readStats(in);
+        int[][] columns = new int[COLUMNS][seconds];
+        for (int column = 0; column < COLUMNS; column++) {
+          for (int i = 0; i < seconds; i++) {
+            columns[column][i] = in.readInt();
+          }
+        }
+        requests.put(key, new Series(stats, columns));
+      }
+      return new Run(requests);
+    }
+  }
+
+  private static RequestStats readStats(DataInputStream in) throws IOException {
+    long koCount = in.readLong();
+    long firstStart = in.readLong();
+    long lastEnd = in.readLong();
+    long sum = in.readLong();
+    long min = in.readLong();
+    long max = in.readLong();
+    long[] counts = new long[LatencyHistogram.BUCKETS];
+    int buckets = in.readUnsignedShort();
+    for (int i = 0; i < buckets; i++) {
+      counts[in.readUnsignedShort()] = in.readLong();
+    }
+    return RequestStats.of(LatencyHistogram.of(counts, sum, min, max), koCount, firstStart, lastEnd);
+  }
+
+  /**
+   * A run in the index.
+   */
+  static final class Entry {
+
+    private final String application;
+    private final String testType;
+    private final String testEnvironment;
+    private final String testRunId;
+    private final String simulation;
+    private final String runName;
+    private final long recordedAt;
+    private final String fileName;
+
+    Entry(String application, String testType, String testEnvironment, String testRunId, String simulation,
+          String runName, long recordedAt, String fileName) {
+      this.application = application;
+      this.testType = testType;
+      this.testEnvironment = testEnvironment;
+      this.testRunId = testRunId;
+      this.simulation = simulation;
+      this.runName = runName;
+      this.recordedAt = recordedAt;
+      this.fileName = fileName;
+    }
+
+    private static Entry parse(String line) {
+      String[] fields = line.split("\t", -1);
+      if (fields.length != 8) {
+        return null;
+      }
+      try {
+        return new Entry(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], Long.parseLong(fields[6]), fields[7]);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    private String toLine() {
+      List<String> fields = Arrays.asList(application, testType, testEnvironment, testRunId, simulation, runName,
+              String.valueOf(recordedAt), fileName);
+      List<String> cleaned = new ArrayList<>();
+      for (String field : fields) {
+        cleaned.add(field == null ? "" : field.replaceAll("[\\t\\r\\n]", " "));
+      }
+      return String.join("\t", cleaned);
+    }
+
+    boolean isOf(String application, String testType, String testEnvironment) {
+      return this.application.equals(application) && this.testType.equals(testType) && this.testEnvironment.equals(testEnvironment);
+    }
+
+    String getTestRunId() {
+      return testRunId;
+    }
+
+    String getSimulation() {
+      return simulation;
+    }
+
+    String getRunName() {
+      return runName;
+    }
+  }
+
+  /**
+   * The results of a stored run.
+   */
+  static final class Run {
+
+    private final Map<String, Series> requests;
+
+    private Run(Map<String, Series> requests) {
+      this.requests = requests;
+    }
+
+    /**
+     * @return the series of all requests, under {@link LocalAssertion#ALL}, then of each request
+     */
+    Map<String, Series> getRequests() {
+      return requests;
+    }
+  }
+
+  /**
+   * Statistics and per second metrics of a request of a stored run.
+   */
+  static final class Series {
+
+    private final RequestStats stats;
+    private final int[][] columns;
+
+    private Series(RequestStats stats, int[][] columns) {
+      this.stats = stats;
+      this.columns = columns;
+    }
+
+    RequestStats getStats() {
+      return stats;
+    }
+
+    /**
+     * @param column one of {@link #COUNT}, {@link #KO_COUNT}, {@link #P50}, {@link #P95}, {@link #P99} and {@link #MAX}
+     * @return a value per second of the run
+     */
+    int[] column(int column) {
+      return columns[column];
+    }
+  }
+
+  /**
+   * Collects the response times of a request per second until the second is closed, then keeps its metrics.
+   */
+  private static final class SeriesBuilder {
+
+    private final RequestStats stats = new RequestStats();
+    private final TreeMap<Long, OpenSecond> openSeconds = new TreeMap<>();
+    private final TreeMap<Long, int[]> closedSeconds = new TreeMap<>();
+
+    void record(SimulationLogParser.Request request) {
+      stats.record(request);
+      openSeconds.computeIfAbsent(request.getEnd() / 1000, second -> new OpenSecond())
+              .record((int) Math.min(Integer.MAX_VALUE, request.getResponseTime()), request.isOk());
+    }
+
+    /**
+     * Closes the seconds up to the given one.
+     */
+    void close(long upToSecond) {
+      Map<Long, OpenSecond> closing = openSeconds.headMap(upToSecond, true);
+      for (Map.Entry<Long, OpenSecond> second : closing.entrySet()) {
+        int[] metrics = second.getValue().metrics();
+        int[] previous = closedSeconds.get(second.getKey());
+        if (previous != null) {
+          // a request completed out of order after its second was closed, percentiles become an upper bound
+          metrics[COUNT] += previous[COUNT];
+          metrics[KO_COUNT] += previous[KO_COUNT];
+          for (int column = P50; column < COLUMNS; column++) {
+            metrics[column] = Math.max(metrics[column], previous[column]);
+          }
+        }
+        closedSeconds.put(second.getKey(), metrics);
+      }
+      closing.clear();
+    }
+
+    int[] column(int column, long firstSecond, int seconds) {
+      int[] values = new int[seconds];
+      for (Map.Entry<Long, int[]> second : closedSeconds.entrySet()) {
+        values[(int) (second.getKey() - firstSecond)] = second.getValue()[column];
+      }
+      return values;
+    }
+  }
+
+  private static final class OpenSecond {
+
+    private int[] responseTimes = new int[16];
+    private int count;
+    private int koCount;
+
+    void record(int responseTime, boolean ok) {
+      if (count == responseTimes.length) {
+        responseTimes = Arrays.copyOf(responseTimes, count * 2);
+      }
+      responseTimes[count++] = responseTime;
+      if (!ok) {
+        koCount++;
+      }
+    }
+
+    int[] metrics() {
+      Arrays.sort(responseTimes, 0, count);
+      int[] metrics = new int[COLUMNS];
+      metrics[COUNT] = count;
+      metrics[KO_COUNT] = koCount;
+      metrics[P50] = percentile(50);
+      metrics[P95] = percentile(95);
+      metrics[P99] = percentile(99);
+      metrics[MAX] = responseTimes[count - 1];
+      return metrics;
+    }
+
+    private int percentile(double percentile) {
+      int rank = Math.max(1, (int) Math.ceil(percentile / 100 * count));
+      return responseTimes[rank - 1];
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Simulations discovered in a previous build, with the fingerprint and header of every class file that was scanned.
+ * <p>
+ * The file is a tab separated text file, one record per line:
+ * <pre>
+ * version    1
+ * classpath  &lt;hash of the test classpath&gt;
+ * filter     &lt;includes and excludes&gt;
+ * class      &lt;path&gt; &lt;size&gt; &lt;last modified&gt; &lt;hash&gt; &lt;class name&gt; &lt;super class name&gt; &lt;access flags&gt;
+ * loaded     &lt;class name outside the compiled classes&gt; &lt;is a simulation&gt;
+ * simulation &lt;class name&gt;
+ * </pre>
+ */
+final class SimulationCache {
+
+  static final String FILE_NAME = "simulations.cache";
+
+  private static final String VERSION = "1";
+  private static final String NO_SUPER_CLASS = "-";
+
+  private final String classpathKey;
+  private final String filterKey;
+  private final Map<String, Entry> classes = new LinkedHashMap<>();
+  private final Map<String, Boolean> loaded = new HashMap<>();
+  private final List<String> simulations = new ArrayList<>();
+
+  SimulationCache(String classpathKey, String filterKey) {
+    this.classpathKey = classpathKey;
+    this.filterKey = filterKey;
+  }
+
+  String getClasspathKey() {
+    return classpathKey;
+  }
+
+  Map<String, Boolean> getLoaded() {
+    return Collections.unmodifiableMap(loaded);
+  }
+
+  List<String> getSimulations() {
+    return Collections.unmodifiableList(simulations);
+  }
+
+  void put(String path, Entry entry) {
+    classes.put(path, entry);
+  }
+
+  void putLoaded(Map<String, Boolean> results) {
+    loaded.putAll(results);
+  }
+
+  void setSimulations(List<String> simulations) {
+    this.simulations.clear();
+    this.simulations.addAll(simulations);
+  }
+
+  /**
+   * @return true when the same class files are found, none of them changed in size or modification time,
+   * and the classpath and filters are the same, so the cached simulations can be used as is
+   */
+  boolean isUpToDate(File folder, String[] classFiles, String classpathKey, String filterKey) {
+    if (!this.classpathKey.equals(classpathKey) || !this.filterKey.equals(filterKey) || classFiles.length != classes.size()) {
+      return false;
+    }
+    for (String classFile : classFiles) {
+      Entry entry = classes.get(classFile);
+      if (entry == null || !entry.fingerprint.hasSameSizeAndTime(new File(folder, classFile))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the cached entry when the class file didn't change, null otherwise
+   */
+  Entry lookup(String path, File classFile) throws IOException {
+    Entry entry = classes.get(path);
+    return entry != null && entry.fingerprint.matches(classFile) ? entry : null;
+  }
+
+  static SimulationCache load(File file) throws IOException {
+    SimulationCache cache = null;
+    if (!file.isFile()) {
+      return new SimulationCache("", "");
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String classpath = "";
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", -1);
+        switch (fields[0]) {
+          case "version":
+            if (!VERSION.equals(fields[1])) {
+              return new SimulationCache("", "");
+            }
+            break;
+          case "classpath":
+            classpath = fields[1];
+            break;
+          case "filter":
+            cache = new SimulationCache(classpath, fields[1]);
+            break;
+          case "class":
+            String superClassName = NO_SUPER_CLASS.equals(fields[6]) ? null : fields[6];
+            ClassHeader header = new ClassHeader(fields[5], superClassName, Integer.parseInt(fields[7]));
+            cache.put(fields[1], new Entry(FileFingerprint.parse(fields[2], fields[3], fields[4]), header));
+            break;
+          case "loaded":
+            cache.loaded.put(fields[1], Boolean.valueOf(fields[2]));
+            break;
+          case "simulation":
+            cache.simulations.add(fields[1]);
+            break;
+          default:
+            throw new IOException("Unexpected record " + fields[0]);
+        }
+      }
+    } catch (RuntimeException e) {
+      throw new IOException("Corrupt simulation cache " + file, e);
+    }
+    return cache != null ? cache : new SimulationCache("", "");
+  }
+
+  void save(File file) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+      writeLine(writer, "version", VERSION);
+      writeLine(writer, "classpath", classpathKey);
+      writeLine(writer, "filter", filterKey);
+      for (Map.Entry<String, Entry> entry : classes.entrySet()) {
+        ClassHeader header = entry.getValue().header;
+        String superClassName = header.getSuperClassName() == null ? NO_SUPER_CLASS : header.getSuperClassName();
+        writeLine(writer, "class", entry.getKey(), entry.getValue().fingerprint.toString(),
+                header.getClassName(), superClassName, String.valueOf(header.getAccessFlags()));
+      }
+      for (Map.Entry<String, Boolean> entry : loaded.entrySet()) {
+        writeLine(writer, "loaded", entry.getKey(), entry.getValue().toString());
+      }
+      for (String simulation : simulations) {
+        writeLine(writer, "simulation", simulation);
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), REPLACE_EXISTING);
+  }
+
+  private static void writeLine(BufferedWriter writer, String... fields) throws IOException {
+    writer.write(String.join("\t", fields));
+    writer.newLine();
+  }
+
+  static final class Entry {
+
+    private final FileFingerprint fingerprint;
+    private final ClassHeader header;
+
+    Entry(FileFingerprint fingerprint, ClassHeader header) {
+      this.fingerprint = fingerprint;
+      this.header = header;
+    }
+
+    static Entry read(File classFile) throws IOException {
+      return new Entry(FileFingerprint.of(classFile), ClassHeader.read(classFile));
+    }
+
+    ClassHeader getHeader() {
+      return header;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the concrete Simulation classes among the compiled test classes by following the super class chain
+ * in the class file headers. Classes are only loaded when the chain leaves the compiled classes, for instance
+ * a simulation extending a base class from a dependency.
+ */
+final class SimulationClassScanner implements Closeable {
+
+  static final String SIMULATION_CLASS = "io.gatling.core.scenario.Simulation";
+
+  private final Map<String, ClassHeader> headers = new LinkedHashMap<>();
+  private final Map<String, Boolean> isSimulation = new HashMap<>();
+  private final Map<String, Boolean> loaded = new HashMap<>();
+  private final URL[] testClasspath;
+
+  private URLClassLoader testClassLoader;
+  private Class<?> simulationClass;
+  private int loadedClasses;
+
+  /**
+   * @param testClasspath classpath used to load the classes the chain leads to outside of the compiled classes
+   */
+  SimulationClassScanner(URL[] testClasspath) {
+    this.testClasspath = testClasspath;
+  }
+
+  void add(ClassHeader header) {
+    headers.put(header.getClassName(), header);
+  }
+
+  /**
+   * Reuse results of classes loaded in a previous build with the same test classpath.
+   */
+  void addLoaded(Map<String, Boolean> results) {
+    loaded.putAll(results);
+  }
+
+  /**
+   * @return whether each class that was looked up outside of the compiled classes is a simulation
+   */
+  Map<String, Boolean> getLoaded() {
+    return loaded;
+  }
+
+  Collection<ClassHeader> headers() {
+    return headers.values();
+  }
+
+  /**
+   * @return number of classes that had to be loaded because their hierarchy left the compiled classes
+   */
+  int getLoadedClasses() {
+    return loadedClasses;
+  }
+
+  /**
+   * @return the names of the given classes that are concrete simulations, in the given order
+   */
+  List<String> simulations(Collection<String> classNames) throws ClassNotFoundException {
+    List<String> simulations = new ArrayList<>();
+    for (String className : classNames) {
+      ClassHeader header = headers.get(className);
+      if (header != null && header.isConcrete() && isSimulation(className)) {
+        simulations.add(className);
+      }
+    }
+    return simulations;
+  }
+
+  boolean isSimulation(String className) throws ClassNotFoundException {
+    List<String> chain = new ArrayList<>();
+    String current = className;
+    Boolean result = null;
+    while (result == null) {
+      result = isSimulation.get(current);
+      if (result != null) {
+        break;
+      }
+      chain.add(current);
+      if (SIMULATION_CLASS.equals(current)) {
+        result = true;
+      } else {
+        ClassHeader header = headers.get(current);
+        if (header == null) {
+          result = isLoadedSimulation(current);
+        } else if (header.getSuperClassName() == null || "java.lang.Object".equals(header.getSuperClassName())) {
+          result = false;
+        } else {
+          current = header.getSuperClassName();
+        }
+      }
+    }
+    for (String name : chain) {
+      isSimulation.put(name, result);
+    }
+    return result;
+  }
+
+  private boolean isLoadedSimulation(String className) throws ClassNotFoundException {
+    Boolean known = loaded.get(className);
+    if (known != null) {
+      return known;
+    }
+    if (testClassLoader == null) {
+      testClassLoader = new URLClassLoader(testClasspath);
+      simulationClass = testClassLoader.loadClass(SIMULATION_CLASS);
+    }
+    loadedClasses++;
+    boolean result = simulationClass.isAssignableFrom(Class.forName(className, false, testClassLoader));
+    loaded.put(className, result);
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (testClassLoader != null) {
+      testClassLoader.close();
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+
+/**
+ * Computes the statistics of a simulation.log without Gatling: the file is memory-mapped and split at line
+ * boundaries into chunks parsed in parallel, whose histograms are then merged.
+ */
+final class SimulationLogAnalyzer {
+
+  private static final long MAX_CHUNK_SIZE = 1L << 30;
+  private static final int BOUNDARY_WINDOW = 64 * 1024;
+  private static final int READ_BLOCK = 1024 * 1024;
+  private static final byte[] REQUEST = SimulationLogParser.REQUEST.getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] RUN = SimulationLogParser.RUN.getBytes(StandardCharsets.US_ASCII);
+
+  private final int threads;
+
+  /**
+   * @param threads number of chunks parsed at the same time
+   */
+  SimulationLogAnalyzer(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  Result analyze(File simulationLog) throws IOException, InterruptedException {
+    try (FileChannel channel = FileChannel.open(simulationLog.toPath(), StandardOpenOption.READ)) {
+      long[] boundaries = chunkBoundaries(channel);
+      ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, boundaries.length - 1));
+      try {
+        List<Future<Result>> chunks = new ArrayList<>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+          final long start = boundaries[i];
+          final long end = boundaries[i + 1];
+          chunks.add(pool.submit(() -> parseChunk(channel, start, end)));
+        }
+        Result result = new Result();
+        for (Future<Result> chunk : chunks) {
+          result.merge(chunk.get());
+        }
+        return result;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof IOException ? (IOException) cause : new IOException("Failed to analyze " + simulationLog, cause);
+      } finally {
+        pool.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * @return the offsets the chunks start at, each one at the beginning of a line, followed by the file size
+   */
+  private long[] chunkBoundaries(FileChannel channel) throws IOException {
+    long size = channel.size();
+    int chunks = (int) Math.max(Math.min(threads * 4L, size / BOUNDARY_WINDOW + 1), (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+    List<Long> boundaries = new ArrayList<>();
+    boundaries.add(0L);
+    for (int i = 1; i < chunks; i++) {
+      long boundary = nextLineStart(channel, Math.max(size / chunks * i, boundaries.get(boundaries.size() - 1)), size);
+      if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size) {
+        boundaries.add(boundary);
+      }
+    }
+    boundaries.add(size);
+
+    long[] result = new long[boundaries.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = boundaries.get(i);
+    }
+    return result;
+  }
+
+  private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+    for (long position = from; position < size; position += BOUNDARY_WINDOW) {
+      MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(BOUNDARY_WINDOW, size - position));
+      for (int i = 0; i < window.limit(); i++) {
+        if (window.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+    }
+    return size;
+  }
+
+  private static Result parseChunk(FileChannel channel, long start, long end) throws IOException {
+    Result result = new Result();
+    MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    byte[] block = new byte[READ_BLOCK];
+    byte[] line = new byte[256];
+    int lineLength = 0;
+    while (chunk.hasRemaining()) {
+      int read = Math.min(block.length, chunk.remaining());
+      chunk.get(block, 0, read);
+      for (int i = 0; i < read; i++) {
+        byte b = block[i];
+        if (b == '\n') {
+          parseLine(line, lineLength, result);
+          lineLength = 0;
+        } else {
+          if (lineLength == line.length) {
+            byte[] larger = new byte[line.length * 2];
+            System.arraycopy(line, 0, larger, 0, lineLength);
+            line = larger;
+          }
+          line[lineLength++] = b;
+        }
+      }
+    }
+    if (lineLength > 0) {
+      parseLine(line, lineLength, result);
+    }
+    return result;
+  }
+
+  private static void parseLine(byte[] line, int length, Result result) {
+    if (length > 0 && line[length - 1] == '\r') {
+      length--;
+    }
+    if (startsWith(line, length, REQUEST)) {
+      SimulationLogParser.Request request = SimulationLogParser.parse(new String(line, 0, length, StandardCharsets.UTF_8));
+      if (request != null) {
+        result.record(request);
+      }
+    } else if (result.simulation == null && startsWith(line, length, RUN)) {
+      String[] fields = new String(line, 0, length, StandardCharsets.UTF_8).split("\t");
+      if (fields.length > 1) {
+        result.simulation = fields[1];
+      }
+    }
+  }
+
+  private static boolean startsWith(byte[] line, int length, byte[] prefix) {
+    if (length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (line[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Statistics of a simulation.log, overall and per request.
+   */
+  static final class Result {
+
+    private final RequestStats total = new RequestStats();
+    private final Map<String, RequestStats> requests = new LinkedHashMap<>();
+    private String simulation;
+
+    void record(SimulationLogParser.Request request) {
+      total.record(request);
+      RequestStats stats = requests.get(request.getKey());
+      if (stats == null) {
+        stats = new RequestStats();
+        requests.put(request.getKey(), stats);
+      }
+      stats.record(request);
+    }
+
+    /**
+     * Adds the statistics of the following part of the log.
+     */
+    void merge(Result other) {
+      total.merge(other.total);
+      for (Map.Entry<String, RequestStats> request : other.requests.entrySet()) {
+        RequestStats stats = requests.get(request.getKey());
+        if (stats == null) {
+          requests.put(request.getKey(), request.getValue().copy());
+        } else {
+          stats.merge(request.getValue());
+        }
+      }
+      if (simulation == null) {
+        simulation = other.simulation;
+      }
+    }
+
+    RequestStats getTotal() {
+      return total;
+    }
+
+    Map<String, RequestStats> getRequests() {
+      return requests;
+    }
+
+    /**
+     * @return the simulation class of the RUN record, null when missing
+     */
+    String getSimulation() {
+      return simulation;
+    }
+
+    void writeSummary(File file) throws IOException {
+      JSONObject summary = new JSONObject();
+      summary.put("simulation", simulation);
+      summary.put("start", total.getFirstStart());
+      summary.put("end", total.getLastEnd());
+      summary.put("total", statsJson(total));
+      JSONArray requestsJson = new JSONArray();
+      for (Map.Entry<String, RequestStats> request : requests.entrySet()) {
+        JSONObject requestJson = statsJson(request.getValue());
+        requestJson.put("name", request.getKey());
+        requestsJson.add(requestJson);
+      }
+      summary.put("requests", requestsJson);
+      Files.write(file.toPath(), summary.toJSONString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JSONObject statsJson(RequestStats stats) {
+      LatencyHistogram responseTimes = stats.getResponseTimes();
+      JSONObject json = new JSONObject();
+      json.put("count", stats.getCount());
+      json.put("ko", stats.getKoCount());
+      json.put("errorPercentage", round(stats.getErrorPercentage()));
+      json.put("requestsPerSecond", round(stats.getThroughput()));
+      json.put("min", responseTimes.getMin());
+      json.put("mean", round(responseTimes.getMean()));
+      json.put("p50", responseTimes.percentile(50));
+      json.put("p75", responseTimes.percentile(75));
+      json.put("p95", responseTimes.percentile(95));
+      json.put("p99", responseTimes.percentile(99));
+      json.put("p999", responseTimes.percentile(99.9));
+      json.put("max", responseTimes.getMax());
+      return json;
+    }
+
+    private static double round(double value) {
+      return Math.round(value * 100) / 100.0;
+    }
+  }
+}
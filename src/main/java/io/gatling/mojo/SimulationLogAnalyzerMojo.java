@@ -0,0 +1,116 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Mojo to compute the statistics of a simulation run from its simulation.log without generating the Gatling
+ * reports, for instance for large logs of runs with {@literal noReports}. Writes them as JSON in the run folder.
+ */
+@Mojo(name = "analyze", threadSafe = true)
+public class SimulationLogAnalyzerMojo extends AbstractMojo {
+
+  static final String SUMMARY_FILE = "summary.json";
+
+  /**
+   * Use this folder as the folder where results are stored.
+   */
+  @Parameter(property = "gatling.resultsFolder", alias = "rf", defaultValue = "${project.basedir}/target/gatling")
+  private File resultsFolder;
+
+  /**
+   * Folder of the run to analyze. By default the run of the results folder with the most recent simulation.log.
+   */
+  @Parameter(property = "gatling.analyze.runFolder")
+  private File runFolder;
+
+  /**
+   * Number of threads parsing the simulation.log. By default the number of available processors.
+   */
+  @Parameter(property = "gatling.analyze.threads", defaultValue = "0")
+  private int threads;
+
+  /**
+   * Skip the analysis.
+   */
+  @Parameter(property = "gatling.skip", defaultValue = "false")
+  private boolean skip;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (skip) {
+      getLog().info("Skipping gatling-maven-plugin");
+      return;
+    }
+
+    File run = runFolder != null ? runFolder : latestRun(resultsFolder);
+    if (run == null) {
+      throw new MojoFailureException("No simulation.log found in " + resultsFolder);
+    }
+    File simulationLog = new File(run, SimulationLogTailer.SIMULATION_LOG);
+    if (!simulationLog.isFile()) {
+      throw new MojoFailureException("No simulation.log found in " + run);
+    }
+
+    int analyzerThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    getLog().info(String.format("Analyzing %s (%d MB) with %d threads.", simulationLog, simulationLog.length() >> 20, analyzerThreads));
+    long startTime = System.currentTimeMillis();
+    try {
+      SimulationLogAnalyzer.Result result = new SimulationLogAnalyzer(analyzerThreads).analyze(simulationLog);
+      File summaryFile = new File(run, SUMMARY_FILE);
+      result.writeSummary(summaryFile);
+
+      getLog().info(String.format("Analyzed in %d ms, summary written to %s", System.currentTimeMillis() - startTime, summaryFile));
+      getLog().info("All requests: " + result.getTotal());
+      for (Map.Entry<String, RequestStats> request : result.getRequests().entrySet()) {
+        getLog().info(request.getKey() + ": " + request.getValue());
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Failed to analyze " + simulationLog, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while analyzing " + simulationLog, e);
+    }
+  }
+
+  /**
+   * @return the run folder with the most recently written simulation.log, null when there is none
+   */
+  static File latestRun(File resultsFolder) {
+    File latest = null;
+    long latestModified = Long.MIN_VALUE;
+    File[] runs = resultsFolder.listFiles(File::isDirectory);
+    if (runs != null) {
+      for (File run : runs) {
+        File simulationLog = new File(run, SimulationLogTailer.SIMULATION_LOG);
+        if (simulationLog.isFile() && simulationLog.lastModified() > latestModified) {
+          latest = run;
+          latestModified = simulationLog.lastModified();
+        }
+      }
+    }
+    return latest;
+  }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the simulation.log files of runs of the same simulation, such as its shards or the runs of several
+ * injectors, into the simulation.log of one run that Gatling can generate reports for.
+ * <p>
+ * The logs are merged in the order of the timestamps of their records, streaming: memory only holds a read buffer
+ * and the next record of each log. The time of a record is its latest timestamp, the time Gatling wrote it, and
+ * records without timestamp stay after the record before them. The merged log only keeps the first RUN record and
+ * the assertions that follow it.
+ */
+final class SimulationLogMerger {
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final int MAX_KEY_FIELDS = 8;
+  private static final byte[] RUN = (SimulationLogParser.RUN + "\t").getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] ASSERTION = "ASSERTION\t".getBytes(StandardCharsets.US_ASCII);
+
+  private SimulationLogMerger() {
+  }
+
+  /**
+   * @param simulationLogs the logs to merge
+   * @param target the merged log, its folder is created when missing
+   * @return the number of records written
+   */
+  static long merge(List<File> simulationLogs, File target) throws IOException {
+    Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+    List<LogCursor> cursors = new ArrayList<>();
+    PriorityQueue<LogCursor> queue = new PriorityQueue<>(Math.max(1, simulationLogs.size()),
+            (a, b) -> a.time != b.time ? Long.compare(a.time, b.time) : Integer.compare(a.index, b.index));
+    long records = 0;
+    try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      for (File simulationLog : simulationLogs) {
+        LogCursor cursor = new LogCursor(simulationLog, cursors.size());
+        cursors.add(cursor);
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+
+      ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+      LogCursor runOwner = null;
+      while (!queue.isEmpty()) {
+        LogCursor cursor = queue.poll();
+        if (keep(cursor, runOwner)) {
+          if (runOwner == null && cursor.startsWith(RUN)) {
+            runOwner = cursor;
+          }
+          write(out, output, cursor.line, cursor.length);
+          records++;
+        }
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+      output.flip();
+      while (output.hasRemaining()) {
+        out.write(output);
+      }
+    } finally {
+      for (LogCursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+    return records;
+  }
+
+  private static boolean keep(LogCursor cursor, LogCursor runOwner) {
+    if (cursor.startsWith(RUN)) {
+      return runOwner == null;
+    }
+    return !cursor.startsWith(ASSERTION) || cursor == runOwner || runOwner == null;
+  }
+
+  private static void write(FileChannel out, ByteBuffer output, byte[] line, int length) throws IOException {
+    if (output.remaining() < length + 1) {
+      output.flip();
+      while (output.hasRemaining()) {
+        out.write(output);
+      }
+      output.clear();
+    }
+    if (length + 1 > output.capacity()) {
+      out.write(ByteBuffer.wrap(line, 0, length));
+      out.write(ByteBuffer.wrap(new byte[]{'\n'}));
+      return;
+    }
+    output.put(line, 0, length);
+    output.put((byte) '\n');
+  }
+
+  /**
+   * Reads the records of a log one at a time, with the time of the current record.
+   */
+  private static final class LogCursor implements Closeable {
+
+    private final FileChannel channel;
+    private final int index;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] line = new byte[256];
+    private int length;
+    private long time = Long.MIN_VALUE;
+    private boolean endOfFile;
+
+    private LogCursor(File simulationLog, int index) throws IOException {
+      this.channel = FileChannel.open(simulationLog.toPath(), StandardOpenOption.READ);
+      this.index = index;
+      buffer.flip();
+    }
+
+    /**
+     * @return false at the end of the log
+     */
+    boolean next() throws IOException {
+      do {
+        if (!readLine()) {
+          return false;
+        }
+      } while (length == 0);
+      long recordTime = latestTimestamp();
+      if (recordTime != Long.MIN_VALUE) {
+        time = recordTime;
+      }
+      return true;
+    }
+
+    private boolean readLine() throws IOException {
+      length = 0;
+      while (true) {
+        if (!buffer.hasRemaining()) {
+          if (endOfFile || !fill()) {
+            return length > 0;
+          }
+        }
+        byte b = buffer.get();
+        if (b == '\n') {
+          if (length > 0 && line[length - 1] == '\r') {
+            length--;
+          }
+          return true;
+        }
+        if (length == line.length) {
+          line = Arrays.copyOf(line, length * 2);
+        }
+        line[length++] = b;
+      }
+    }
+
+    private boolean fill() throws IOException {
+      buffer.clear();
+      int read = channel.read(buffer);
+      buffer.flip();
+      if (read <= 0) {
+        endOfFile = true;
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * @return the latest timestamp in the first fields of the record, Long.MIN_VALUE when there is none
+     */
+    private long latestTimestamp() {
+      long latest = Long.MIN_VALUE;
+      int field = 0;
+      int from = 0;
+      for (int i = 0; i <= length && field < MAX_KEY_FIELDS; i++) {
+        if (i == length || line[i] == '\t') {
+          long value = timestamp(from, i);
+          if (value > latest) {
+            latest = value;
+          }
+          field++;
+          from = i + 1;
+        }
+      }
+      return latest;
+    }
+
+    /**
+     * @return the timestamp of the field, Long.MIN_VALUE when it isn't an epoch millis timestamp
+     */
+    private long timestamp(int from, int to) {
+      int digits = to - from;
+      if (digits < 10 || digits > 18) {
+        return Long.MIN_VALUE;
+      }
+      long value = 0;
+      for (int i = from; i < to; i++) {
+        int digit = line[i] - '0';
+        if (digit < 0 || digit > 9) {
+          return Long.MIN_VALUE;
+        }
+        value = value * 10 + digit;
+      }
+      return value;
+    }
+
+    boolean startsWith(byte[] prefix) {
+      if (length < prefix.length) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length; i++) {
+        if (line[i] != prefix[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
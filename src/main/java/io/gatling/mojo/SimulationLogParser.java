@@ -0,0 +1,147 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+/**
+ * Parses the request records of a Gatling simulation.log.
+ * <p>
+ * The layout of a REQUEST record changed between Gatling versions, so the parser doesn't rely on field positions:
+ * the status is the first OK or KO field preceded by at least two timestamps, the request name is the field before
+ * the timestamps and the groups the field before the name.
+ */
+final class SimulationLogParser {
+
+  static final String REQUEST = "REQUEST";
+  static final String RUN = "RUN";
+
+  private static final char SEPARATOR = '\t';
+  private static final int MAX_FIELDS = 16;
+
+  private SimulationLogParser() {
+  }
+
+  /**
+   * @return the request of the given line, or null when the line isn't a complete request record
+   */
+  static Request parse(String line) {
+    if (!line.startsWith(REQUEST)) {
+      return null;
+    }
+    String[] fields = split(line);
+    for (int status = 3; status < fields.length && fields[status] != null; status++) {
+      boolean ok = "OK".equals(fields[status]);
+      if (!ok && !"KO".equals(fields[status])) {
+        continue;
+      }
+      int firstTimestamp = status;
+      while (firstTimestamp > 1 && isTimestamp(fields[firstTimestamp - 1])) {
+        firstTimestamp--;
+      }
+      if (status - firstTimestamp < 2 || firstTimestamp < 2) {
+        continue;
+      }
+      String name = fields[firstTimestamp - 1];
+      String groups = firstTimestamp > 2 ? fields[firstTimestamp - 2] : "";
+      long start = Long.parseLong(fields[firstTimestamp]);
+      long end = Long.parseLong(fields[status - 1]);
+      return new Request(groups, name, start, end, ok);
+    }
+    return null;
+  }
+
+  /**
+   * Splits the first fields of the line, the message and extra info at the end of a record aren't needed.
+   */
+  private static String[] split(String line) {
+    String[] fields = new String[MAX_FIELDS];
+    int from = 0;
+    for (int i = 0; i < MAX_FIELDS; i++) {
+      int to = line.indexOf(SEPARATOR, from);
+      if (to < 0) {
+        fields[i] = line.substring(from);
+        break;
+      }
+      fields[i] = line.substring(from, to);
+      from = to + 1;
+    }
+    return fields;
+  }
+
+  private static boolean isTimestamp(String field) {
+    // epoch millis, so short numeric request names aren't taken for timestamps
+    if (field == null || field.length() < 10 || field.length() > 18) {
+      return false;
+    }
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A request of the simulation.log.
+   */
+  static final class Request {
+
+    private final String groups;
+    private final String name;
+    private final long start;
+    private final long end;
+    private final boolean ok;
+
+    Request(String groups, String name, long start, long end, boolean ok) {
+      this.groups = groups;
+      this.name = name;
+      this.start = start;
+      this.end = end;
+      this.ok = ok;
+    }
+
+    String getGroups() {
+      return groups;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    /**
+     * @return the groups and the name of the request, identifying it in the statistics
+     */
+    String getKey() {
+      return groups.isEmpty() ? name : groups + " / " + name;
+    }
+
+    long getStart() {
+      return start;
+    }
+
+    long getEnd() {
+      return end;
+    }
+
+    long getResponseTime() {
+      return Math.max(0, end - start);
+    }
+
+    boolean isOk() {
+      return ok;
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Follows the simulation.log files of the runs started in the results folders after the tailer, and records their
+ * requests in {@link LiveStatistics}. Each poll only reads what was appended since the previous one.
+ */
+final class SimulationLogTailer implements Closeable {
+
+  static final String SIMULATION_LOG = "simulation.log";
+
+  private static final long POLL_MILLIS = 1000;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File resultsFolder;
+  private final LiveStatistics statistics;
+  private final Log log;
+  // results folders with the runs that existed before they were followed
+  private final Map<File, Set<String>> followedFolders = new LinkedHashMap<>();
+  private final Map<File, TailedFile> tailedFiles = new LinkedHashMap<>();
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private ScheduledExecutorService scheduler;
+
+  SimulationLogTailer(File resultsFolder, LiveStatistics statistics, Log log) {
+    this.resultsFolder = resultsFolder;
+    this.statistics = statistics;
+    this.log = log;
+    follow(resultsFolder);
+  }
+
+  /**
+   * Also follows the runs started in the given results folder from now on, such as the folder of the shards of a
+   * simulation.
+   */
+  synchronized void follow(File folder) {
+    String[] runs = folder.list();
+    followedFolders.putIfAbsent(folder, runs == null ? new HashSet<>() : new HashSet<>(Arrays.asList(runs)));
+  }
+
+  /**
+   * Doesn't follow the given run of the results folder, such as a run merged from runs that were followed.
+   */
+  synchronized void ignore(String runName) {
+    followedFolders.get(resultsFolder).add(runName);
+  }
+
+  void start() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "gatling-simulation-log-tailer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::poll, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Reads what was appended to the simulation.log files since the previous poll.
+   */
+  synchronized void poll() {
+    for (Map.Entry<File, Set<String>> folder : followedFolders.entrySet()) {
+      Set<String> previousRuns = folder.getValue();
+      File[] runs = folder.getKey().listFiles(file -> file.isDirectory() && !previousRuns.contains(file.getName()));
+      if (runs != null) {
+        for (File run : runs) {
+          File simulationLog = new File(run, SIMULATION_LOG);
+          if (!tailedFiles.containsKey(simulationLog) && simulationLog.isFile()) {
+            log.debug("Following " + simulationLog);
+            tailedFiles.put(simulationLog, new TailedFile());
+          }
+        }
+      }
+    }
+    for (Map.Entry<File, TailedFile> tailed : tailedFiles.entrySet()) {
+      try {
+        read(tailed.getKey(), tailed.getValue());
+      } catch (IOException e) {
+        log.debug("Failed to read " + tailed.getKey() + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private void read(File file, TailedFile tailed) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() < tailed.position) {
+        // rewritten from scratch
+        tailed.position = 0;
+        tailed.partialLine.reset();
+      }
+      channel.position(tailed.position);
+      buffer.clear();
+      while (channel.read(buffer) > 0) {
+        buffer.flip();
+        tailed.position += buffer.remaining();
+        byte[] bytes = buffer.array();
+        int lineStart = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+          if (bytes[i] == '\n') {
+            tailed.partialLine.write(bytes, lineStart, i - lineStart);
+            record(file, tailed.partialLine);
+            tailed.partialLine.reset();
+            lineStart = i + 1;
+          }
+        }
+        tailed.partialLine.write(bytes, lineStart, buffer.limit() - lineStart);
+        buffer.clear();
+      }
+    }
+  }
+
+  private void record(File file, ByteArrayOutputStream line) {
+    String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+    if (text.endsWith("\r")) {
+      text = text.substring(0, text.length() - 1);
+    }
+    SimulationLogParser.Request request = SimulationLogParser.parse(text);
+    if (request != null) {
+      statistics.record(file, request);
+    }
+  }
+
+  /**
+   * Stops following the files, after reading what the simulations wrote last.
+   */
+  @Override
+  public void close() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    poll();
+  }
+
+  private static final class TailedFile {
+
+    private long position;
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+/**
+ * Statistics of the requests that ended during the last seconds, in one bucket per second. The window follows the
+ * end time of the most recent request rather than the clock, so it isn't skewed by the delay of the log writes.
+ * Not thread safe.
+ */
+final class SlidingWindow {
+
+  private final RequestStats[] buckets;
+  private final long[] bucketSeconds;
+  private long latestSecond = Long.MIN_VALUE;
+
+  /**
+   * @param seconds length of the window
+   */
+  SlidingWindow(int seconds) {
+    this.buckets = new RequestStats[Math.max(1, seconds)];
+    this.bucketSeconds = new long[buckets.length];
+  }
+
+  void record(SimulationLogParser.Request request) {
+    long second = request.getEnd() / 1000;
+    if (second > latestSecond) {
+      latestSecond = second;
+    } else if (second <= latestSecond - buckets.length) {
+      // older than the window
+      return;
+    }
+    int index = (int) (second % buckets.length);
+    if (buckets[index] == null || bucketSeconds[index] != second) {
+      buckets[index] = new RequestStats();
+      bucketSeconds[index] = second;
+    }
+    buckets[index].record(request);
+  }
+
+  /**
+   * @return the statistics of the requests of the window
+   */
+  RequestStats aggregate() {
+    RequestStats window = new RequestStats();
+    for (int i = 0; i < buckets.length; i++) {
+      if (buckets[i] != null && bucketSeconds[i] > latestSecond - buckets.length) {
+        window.merge(buckets[i]);
+      }
+    }
+    return window;
+  }
+
+  int getSeconds() {
+    return buckets.length;
+  }
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Records the per second metrics of a soak test, as sent by the Gatling graphite writer, with bounded disk usage:
+ * the raw metrics go to gzip segments rolled at a fixed interval of which only the latest are kept, and they are
+ * aggregated per minute into a CSV and into a summary of the whole run.
+ * <p>
+ * Gatling only sends percentiles per second, which can't be merged: the percentiles of a minute and of the run are
+ * the worst percentiles of their seconds, an upper bound, and are named so, such as maxSecondP95.
+ * <p>
+ * A metric line is {@code <prefix>.<simulation>.<request path>.<ok|ko|all>.<stat> <value> <epoch seconds>}, with
+ * {@code allRequests} as request path for all requests, or {@code <prefix>.<simulation>.users.<scenario>.<state>}
+ * for the users.
+ */
+final class SoakRecorder implements Closeable {
+
+  static final String MINUTES_FILE = "soak-minutes.csv";
+  static final String SUMMARY_FILE = "soak-summary.txt";
+
+  private static final String MINUTES_HEADER = "minute,request,status,count,min,max,mean,maxSecondP50,maxSecondP75,maxSecondP95,maxSecondP99,activeUsers";
+  private static final String[] PERCENTILES = {"percentiles50", "percentiles75", "percentiles95", "percentiles99"};
+  // seconds the writer may lag behind the latest second before a second is aggregated
+  private static final long SECONDS_LAG = 5;
+
+  private final File folder;
+  private final long segmentMillis;
+  private final int retainedSegments;
+  private final Log log;
+
+  private final Deque<File> segments = new ArrayDeque<>();
+  private Writer segment;
+  private long segmentEnd;
+
+  // per second and per minute, by request path and status, until complete
+  private final TreeMap<Long, Map<String, Second>> seconds = new TreeMap<>();
+  private final TreeMap<Long, Map<String, Bucket>> minutes = new TreeMap<>();
+  private final TreeMap<Long, Long> activeUsers = new TreeMap<>();
+  private final Map<String, Bucket> totals = new TreeMap<>();
+  private final Map<String, Double> maxSecondP95 = new TreeMap<>();
+  private final Map<String, Double> maxSecondP99 = new TreeMap<>();
+  private BufferedWriter minutesWriter;
+  private long latestSecond = Long.MIN_VALUE;
+  private long maxActiveUsers;
+  private long lines;
+  private boolean rawFailed;
+
+  /**
+   * @param folder folder of the segments, the per minute CSV and the summary
+   * @param segmentMillis time covered by a segment
+   * @param retainedSegments number of latest segments kept, 0 to keep no raw metrics
+   */
+  SoakRecorder(File folder, long segmentMillis, int retainedSegments, Log log) {
+    this.folder = folder;
+    this.segmentMillis = segmentMillis;
+    this.retainedSegments = retainedSegments;
+    this.log = log;
+  }
+
+  void start() throws IOException {
+    Files.createDirectories(folder.toPath());
+    minutesWriter = Files.newBufferedWriter(new File(folder, MINUTES_FILE).toPath(), StandardCharsets.UTF_8);
+    minutesWriter.write(MINUTES_HEADER);
+    minutesWriter.newLine();
+  }
+
+  /**
+   * Records a metric line of the graphite plaintext protocol, ignoring malformed ones.
+   */
+  synchronized void record(String line) throws IOException {
+    String[] fields = line.trim().split("\\s+");
+    if (fields.length != 3) {
+      return;
+    }
+    lines++;
+    if (!rawFailed) {
+      try {
+        writeRaw(line);
+      } catch (IOException e) {
+        // the aggregates are what matters, and are much smaller
+        rawFailed = true;
+        log.warn("Failed to write the raw soak test metrics, only aggregating them from now on: " + e.getMessage());
+      }
+    }
+
+    double value;
+    long second;
+    try {
+      value = Double.parseDouble(fields[1]);
+      second = Long.parseLong(fields[2]);
+    } catch (NumberFormatException e) {
+      return;
+    }
+    String[] path = fields[0].split("\\.");
+    if (path.length < 5) {
+      return;
+    }
+    String stat = path[path.length - 1];
+    String status = path[path.length - 2];
+    if ("users".equals(path[2]) && "allUsers".equals(path[3]) && "active".equals(stat)) {
+      activeUsers.merge(second / 60, (long) value, Math::max);
+      maxActiveUsers = Math.max(maxActiveUsers, (long) value);
+    } else if ("ok".equals(status) || "ko".equals(status) || "all".equals(status)) {
+      String request = String.join(".", Arrays.asList(path).subList(2, path.length - 2));
+      seconds.computeIfAbsent(second, s -> new TreeMap<>())
+              .computeIfAbsent(request + "," + status, k -> new Second())
+              .set(stat, value);
+    }
+
+    if (second > latestSecond) {
+      latestSecond = second;
+      aggregateSeconds(latestSecond - SECONDS_LAG);
+      // the minutes whose seconds were all aggregated
+      writeMinutes(Math.floorDiv(latestSecond - SECONDS_LAG - 59, 60));
+    }
+  }
+
+  private void writeRaw(String line) throws IOException {
+    if (retainedSegments <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (segment == null || now >= segmentEnd) {
+      rollSegment(now);
+    }
+    segment.write(line);
+    segment.write('\n');
+  }
+
+  private void rollSegment(long now) throws IOException {
+    if (segment != null) {
+      segment.close();
+    }
+    SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.ROOT);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    File file = new File(folder, "metrics-" + format.format(new Date(now)) + ".log.gz");
+    segment = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+            Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 64 * 1024), StandardCharsets.UTF_8));
+    segmentEnd = now + segmentMillis;
+    segments.addLast(file);
+    while (segments.size() > retainedSegments) {
+      Files.deleteIfExists(segments.removeFirst().toPath());
+    }
+  }
+
+  /**
+   * Moves the seconds up to the given one into their minute, once all their metrics were received.
+   */
+  private void aggregateSeconds(long upToSecond) {
+    Iterator<Map.Entry<Long, Map<String, Second>>> it = seconds.headMap(upToSecond, true).entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Long, Map<String, Second>> second = it.next();
+      Map<String, Bucket> minute = minutes.computeIfAbsent(second.getKey() / 60, m -> new TreeMap<>());
+      for (Map.Entry<String, Second> metrics : second.getValue().entrySet()) {
+        minute.computeIfAbsent(metrics.getKey(), k -> new Bucket()).add(metrics.getValue());
+      }
+      it.remove();
+    }
+  }
+
+  /**
+   * Writes the minutes up to the given one to the CSV and adds them to the totals.
+   */
+  private void writeMinutes(long upToMinute) throws IOException {
+    Iterator<Map.Entry<Long, Map<String, Bucket>>> it = minutes.headMap(upToMinute, true).entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Long, Map<String, Bucket>> minute = it.next();
+      Long users = activeUsers.remove(minute.getKey());
+      for (Map.Entry<String, Bucket> bucket : minute.getValue().entrySet()) {
+        Bucket stats = bucket.getValue();
+        minutesWriter.write(String.format(Locale.ROOT, "%d,%s,%d,%.0f,%.0f,%.1f,%.0f,%.0f,%.0f,%.0f,%s",
+                minute.getKey() * 60, bucket.getKey(), stats.count, stats.min(), stats.max, stats.mean(),
+                stats.percentiles[0], stats.percentiles[1], stats.percentiles[2], stats.percentiles[3],
+                users == null ? "" : users));
+        minutesWriter.newLine();
+        totals.computeIfAbsent(bucket.getKey(), k -> new Bucket()).add(stats);
+        maxSecondP95.merge(bucket.getKey(), stats.percentiles[2], Math::max);
+        maxSecondP99.merge(bucket.getKey(), stats.percentiles[3], Math::max);
+      }
+      it.remove();
+    }
+    activeUsers.headMap(upToMinute, true).clear();
+    minutesWriter.flush();
+  }
+
+  File getFolder() {
+    return folder;
+  }
+
+  /**
+   * @return the summary of the whole run, from the per minute aggregates
+   */
+  synchronized List<String> summary() {
+    List<String> summary = new ArrayList<>();
+    summary.add(String.format(Locale.ROOT, "%d metrics received, max %d active users", lines, maxActiveUsers));
+    summary.add("request,status: count, min, max, mean, worst second p95, worst second p99 (ms)");
+    for (Map.Entry<String, Bucket> total : totals.entrySet()) {
+      Bucket stats = total.getValue();
+      summary.add(String.format(Locale.ROOT, "%s: %d, %.0f, %.0f, %.1f, %.0f, %.0f", total.getKey(), stats.count,
+              stats.min(), stats.max, stats.mean(), maxSecondP95.get(total.getKey()), maxSecondP99.get(total.getKey())));
+    }
+    return summary;
+  }
+
+  /**
+   * Aggregates what is left and writes the summary.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      if (minutesWriter != null) {
+        aggregateSeconds(Long.MAX_VALUE);
+        writeMinutes(Long.MAX_VALUE);
+        Files.write(new File(folder, SUMMARY_FILE).toPath(), summary(), StandardCharsets.UTF_8);
+        minutesWriter.close();
+      }
+    } finally {
+      if (segment != null) {
+        segment.close();
+      }
+    }
+  }
+
+  /**
+   * Metrics of a request and status over a second, as sent by Gatling.
+   */
+  private static final class Second {
+
+    private long count;
+    private double min;
+    private double max;
+    private double mean;
+    private final double[] percentiles = new double[PERCENTILES.length];
+
+    void set(String stat, double value) {
+      switch (stat) {
+        case "count":
+          count = (long) value;
+          break;
+        case "min":
+          min = value;
+          break;
+        case "max":
+          max = value;
+          break;
+        case "mean":
+          mean = value;
+          break;
+        default:
+          for (int i = 0; i < PERCENTILES.length; i++) {
+            if (PERCENTILES[i].equals(stat)) {
+              percentiles[i] = value;
+            }
+          }
+      }
+    }
+  }
+
+  /**
+   * Metrics of a request and status over a minute or the whole run. Percentiles can't be merged, the worst
+   * percentiles of the seconds are kept, an upper bound.
+   */
+  private static final class Bucket {
+
+    private long count;
+    private double min = Double.MAX_VALUE;
+    private double max;
+    private double sum;
+    private final double[] percentiles = new double[PERCENTILES.length];
+
+    void add(Second second) {
+      if (second.count > 0) {
+        merge(second.count, second.min, second.max, second.mean * second.count, second.percentiles);
+      }
+    }
+
+    void add(Bucket bucket) {
+      if (bucket.count > 0) {
+        merge(bucket.count, bucket.min, bucket.max, bucket.sum, bucket.percentiles);
+      }
+    }
+
+    private void merge(long otherCount, double otherMin, double otherMax, double otherSum, double[] otherPercentiles) {
+      count += otherCount;
+      min = Math.min(min, otherMin);
+      max = Math.max(max, otherMax);
+      sum += otherSum;
+      for (int i = 0; i < percentiles.length; i++) {
+        percentiles[i] = Math.max(percentiles[i], otherPercentiles[i]);
+      }
+    }
+
+    double min() {
+      return count == 0 ? 0 : min;
+    }
+
+    double mean() {
+      return count == 0 ? 0 : sum / count;
+    }
+  }
+}
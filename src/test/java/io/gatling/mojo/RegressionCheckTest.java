@@ -0,0 +1,46 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RegressionCheckTest {
+
+  @Test
+  public void welchOfSamplesWithVariance() {
+    // means 3 and 4, variances 2.5, standard error 1
+    assertEquals(-1, RegressionCheck.welch(new int[]{1, 2, 3, 4, 5}, new int[]{2, 3, 4, 5, 6}), 1e-9);
+  }
+
+  @Test
+  public void welchOfEqualSamplesWithoutVarianceIsZero() {
+    assertEquals(0, RegressionCheck.welch(new int[]{7, 7, 7}, new int[]{7, 7, 7, 7}), 0);
+  }
+
+  @Test
+  public void welchOfDifferentSamplesWithoutVarianceIsInfinite() {
+    assertEquals(Double.POSITIVE_INFINITY, RegressionCheck.welch(new int[]{8, 8, 8}, new int[]{7, 7, 7}), 0);
+    assertEquals(Double.NEGATIVE_INFINITY, RegressionCheck.welch(new int[]{7, 7, 7}, new int[]{8, 8, 8}), 0);
+  }
+
+  @Test
+  public void welchWithOneSampleWithoutVarianceIsFinite() {
+    // means 3 and 1, standard error sqrt(2.5 / 5)
+    assertEquals(2 / Math.sqrt(0.5), RegressionCheck.welch(new int[]{1, 2, 3, 4, 5}, new int[]{1, 1, 1, 1, 1}), 1e-9);
+  }
+}
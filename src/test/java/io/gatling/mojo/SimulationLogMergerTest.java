@@ -0,0 +1,93 @@
+/**
+ * Copyright 2011-2017 GatlingCorp (http://gatling.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gatling.mojo;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SimulationLogMergerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void mergesInterleavedLogsInTimestampOrder() throws IOException {
+    File first = log("REQUEST\t1\t\tfirst\t1500000000000\t1500000001000\tOK\t ",
+            "REQUEST\t1\t\tfirst\t1500000002000\t1500000003000\tOK\t ");
+    File second = log("REQUEST\t2\t\tsecond\t1500000001000\t1500000002000\tOK\t ",
+            "REQUEST\t2\t\tsecond\t1500000003000\t1500000004000\tOK\t ");
+
+    assertEquals(asList(
+            "REQUEST\t1\t\tfirst\t1500000000000\t1500000001000\tOK\t ",
+            "REQUEST\t2\t\tsecond\t1500000001000\t1500000002000\tOK\t ",
+            "REQUEST\t1\t\tfirst\t1500000002000\t1500000003000\tOK\t ",
+            "REQUEST\t2\t\tsecond\t1500000003000\t1500000004000\tOK\t "), merge(first, second));
+  }
+
+  @Test
+  public void keepsRecordsWithoutTimestampAfterThePreviousRecordOfTheirLog() throws IOException {
+    File first = log("REQUEST\t1\t\tfirst\t1500000000000\t1500000001000\tOK\t ",
+            "ERROR\tno timestamp",
+            "REQUEST\t1\t\tfirst\t1500000002000\t1500000003000\tOK\t ");
+    File second = log("REQUEST\t2\t\tsecond\t1500000001000\t1500000002000\tOK\t ");
+
+    assertEquals(asList(
+            "REQUEST\t1\t\tfirst\t1500000000000\t1500000001000\tOK\t ",
+            "ERROR\tno timestamp",
+            "REQUEST\t2\t\tsecond\t1500000001000\t1500000002000\tOK\t ",
+            "REQUEST\t1\t\tfirst\t1500000002000\t1500000003000\tOK\t "), merge(first, second));
+  }
+
+  @Test
+  public void keepsOnlyTheFirstRunAndItsAssertions() throws IOException {
+    File first = log("RUN\tcomputerdatabase.BasicSimulation\tbasicsimulation\t1500000000000\t \t2.2.5",
+            "ASSERTION\tfirst",
+            "REQUEST\t1\t\tfirst\t1500000001000\t1500000002000\tOK\t ");
+    File second = log("RUN\tcomputerdatabase.BasicSimulation\tbasicsimulation\t1500000000500\t \t2.2.5",
+            "ASSERTION\tsecond",
+            "REQUEST\t2\t\tsecond\t1500000001500\t1500000002500\tOK\t ");
+
+    assertEquals(asList(
+            "RUN\tcomputerdatabase.BasicSimulation\tbasicsimulation\t1500000000000\t \t2.2.5",
+            "ASSERTION\tfirst",
+            "REQUEST\t1\t\tfirst\t1500000001000\t1500000002000\tOK\t ",
+            "REQUEST\t2\t\tsecond\t1500000001500\t1500000002500\tOK\t "), merge(second, first));
+  }
+
+  private File log(String... records) throws IOException {
+    File log = folder.newFile();
+    Files.write(log.toPath(), asList(records), StandardCharsets.UTF_8);
+    return log;
+  }
+
+  private List<String> merge(File... logs) throws IOException {
+    File target = new File(folder.getRoot(), "merged/simulation.log");
+    long records = SimulationLogMerger.merge(asList(logs), target);
+    List<String> merged = Files.readAllLines(target.toPath(), StandardCharsets.UTF_8);
+    assertEquals(merged.size(), records);
+    return merged;
+  }
+}